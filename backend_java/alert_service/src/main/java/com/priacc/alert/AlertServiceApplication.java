@@ -1,9 +1,12 @@
 package com.priacc.alert;
 
+import com.priacc.common.security.UserIdResolver;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Import;
 
 @SpringBootApplication
+@Import(UserIdResolver.class)
 public class AlertServiceApplication {
     public static void main(String[] args) {
         SpringApplication.run(AlertServiceApplication.class, args);
@@ -1,39 +1,110 @@
 package com.priacc.alert.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.data.domain.Window;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import java.net.URI;
+import java.time.Instant;
 import java.util.List;
 import java.util.Map;
+import com.priacc.common.security.UserIdResolver;
+import com.priacc.common.web.ExportWriter;
 import com.priacc.alert.model.Alert;
+import com.priacc.alert.service.AlertCoalescer;
 import com.priacc.alert.service.AlertService;
+import com.priacc.alert.service.AlertStreamService;
 
 @RestController
 @RequestMapping("/alerts")
 public class AlertController {
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private static final List<ExportWriter.Column<Alert>> EXPORT_COLUMNS = List.of(
+        new ExportWriter.Column<>("id", Alert::getId),
+        new ExportWriter.Column<>("title", Alert::getTitle),
+        new ExportWriter.Column<>("message", Alert::getMessage),
+        new ExportWriter.Column<>("priority", Alert::getPriority),
+        new ExportWriter.Column<>("timestamp", Alert::getTimestamp),
+        new ExportWriter.Column<>("userId", Alert::getUserId),
+        new ExportWriter.Column<>("occurrences", Alert::getOccurrences),
+        new ExportWriter.Column<>("lastSeen", Alert::getLastSeen)
+    );
+
     private final AlertService service;
-    private final RestTemplate restTemplate;
+    private final AlertStreamService streams;
+    private final UserIdResolver userIdResolver;
+    private final ObjectMapper objectMapper;
 
-    public AlertController(AlertService service, RestTemplate restTemplate) {
+    public AlertController(AlertService service, AlertStreamService streams, UserIdResolver userIdResolver,
+                           ObjectMapper objectMapper) {
         this.service = service;
-        this.restTemplate = restTemplate;
+        this.streams = streams;
+        this.userIdResolver = userIdResolver;
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping
     public ResponseEntity<Alert> create(
         @RequestBody Alert dto,
-        @RequestHeader(value = "X-Username", required = false) String username
+        @RequestHeader(value = "X-Username", required = false) String username,
+        @RequestHeader(value = "X-User-Id", required = false) Long userIdHeader
     ) {
-        Long userId = resolveUserId(username);
+        Long userId = userIdResolver.resolve(userIdHeader, username);
         if (userId == null) {
             return ResponseEntity.status(401).build();
         }
 
         dto.setUserId(userId);
         Alert created = service.create(dto);
+        if (created.getOccurrences() != null && created.getOccurrences() > 1) {
+            // Coalesced into an alert raised moments ago
+            return ResponseEntity.ok(created);
+        }
         return ResponseEntity.created(URI.create("/api/alerts/" + created.getId())).body(created);
     }
+
+    /**
+     * Creates up to MAX_BATCH_SIZE alerts at once, for services that raise alerts in bulk (e.g.
+     * power-service's sensor rules). Requests through the gateway create them all for the caller;
+     * internal callers, which send no user headers, set each alert's userId. Answers how many
+     * rows were created and how many alerts were coalesced into others.
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<?> createBatch(
+        @RequestBody List<Alert> alerts,
+        @RequestHeader(value = "X-Username", required = false) String username,
+        @RequestHeader(value = "X-User-Id", required = false) Long userIdHeader
+    ) {
+        Long userId = null;
+        if (username != null || userIdHeader != null) {
+            userId = userIdResolver.resolve(userIdHeader, username);
+            if (userId == null) {
+                return ResponseEntity.status(401).build();
+            }
+        }
+        if (alerts.size() > AlertService.MAX_BATCH_SIZE) {
+            return ResponseEntity.badRequest().body(Map.of("message", "A batch holds at most " + AlertService.MAX_BATCH_SIZE + " alerts"));
+        }
+
+        Instant now = Instant.now();
+        for (Alert alert : alerts) {
+            alert.setId(null);
+            if (userId != null) {
+                alert.setUserId(userId);
+            } else if (alert.getUserId() == null) {
+                return ResponseEntity.badRequest().body(Map.of("message", "Every alert needs a userId"));
+            }
+            if (alert.getTimestamp() == null) {
+                alert.setTimestamp(now);
+            }
+        }
+        AlertCoalescer.Result result = service.createAll(alerts);
+        return ResponseEntity.status(201).body(Map.of("created", result.created(), "coalesced", alerts.size() - result.created()));
+    }
     
     @GetMapping
     public String test(@RequestHeader(value = "X-Username", required = false) String username) {
@@ -41,13 +112,70 @@ public class AlertController {
     }
 
     @GetMapping("/list")
-    public ResponseEntity<List<Alert>> list(@RequestHeader(value = "X-Username", required = false) String username) {
-        Long userId = resolveUserId(username);
+    public ResponseEntity<List<Alert>> list(
+        @RequestHeader(value = "X-Username", required = false) String username,
+        @RequestHeader(value = "X-User-Id", required = false) Long userIdHeader,
+        @RequestParam(required = false) String priority,
+        @RequestParam(required = false) Instant from,
+        @RequestParam(required = false) Instant to,
+        @RequestParam(required = false) Long cursor,
+        @RequestParam(defaultValue = "" + AlertService.DEFAULT_PAGE_SIZE) int limit
+    ) {
+        Long userId = userIdResolver.resolve(userIdHeader, username);
         if (userId == null) {
             return ResponseEntity.status(401).build();
         }
 
-        return ResponseEntity.ok(service.list(userId));
+        Window<Alert> page = service.list(userId, priority, from, to, cursor, limit);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.hasNext()) {
+            response.header(NEXT_CURSOR_HEADER, String.valueOf(page.getContent().get(page.size() - 1).getId()));
+        }
+        return response.body(page.getContent());
+    }
+
+    /** All of the user's alerts, oldest first, streamed as NDJSON (default) or CSV. */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(
+        @RequestHeader(value = "X-Username", required = false) String username,
+        @RequestHeader(value = "X-User-Id", required = false) Long userIdHeader,
+        @RequestParam(defaultValue = "ndjson") String format
+    ) {
+        Long userId = userIdResolver.resolve(userIdHeader, username);
+        if (userId == null) {
+            return ResponseEntity.status(401).build();
+        }
+        ExportWriter.Format exportFormat = ExportWriter.Format.parse(format);
+        if (exportFormat == null) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        return ExportWriter.response(exportFormat, "alerts", objectMapper, EXPORT_COLUMNS,
+                sink -> service.export(userId, sink));
+    }
+
+    /**
+     * The user's alerts as Server-Sent Events: "created" (with the alert id as event id) and
+     * "updated". A reconnecting client sends Last-Event-ID (or ?lastEventId=) and first gets the
+     * alerts created since; 503 when this instance holds too many streams.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> stream(
+        @RequestHeader(value = "X-Username", required = false) String username,
+        @RequestHeader(value = "X-User-Id", required = false) Long userIdHeader,
+        @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventIdHeader,
+        @RequestParam(required = false) Long lastEventId
+    ) {
+        Long userId = userIdResolver.resolve(userIdHeader, username);
+        if (userId == null) {
+            return ResponseEntity.status(401).build();
+        }
+
+        SseEmitter emitter = streams.open(userId, lastEventIdHeader != null ? lastEventIdHeader : lastEventId);
+        if (emitter == null) {
+            return ResponseEntity.status(503).build();
+        }
+        return ResponseEntity.ok().header("Cache-Control", "no-store").body(emitter);
     }
 
     @GetMapping("/{id}")
@@ -59,9 +187,10 @@ public class AlertController {
     public ResponseEntity<Alert> update(
         @PathVariable Long id,
         @RequestBody Alert up,
-        @RequestHeader(value = "X-Username", required = false) String username
+        @RequestHeader(value = "X-Username", required = false) String username,
+        @RequestHeader(value = "X-User-Id", required = false) Long userIdHeader
     ) {
-        Long userId = resolveUserId(username);
+        Long userId = userIdResolver.resolve(userIdHeader, username);
         if (userId == null) {
             return ResponseEntity.status(401).build();
         }
@@ -76,28 +205,4 @@ public class AlertController {
         service.delete(id);
         return ResponseEntity.noContent().build();
     }
-
-    private Long resolveUserId(String username) {
-        if (username == null || username.isBlank()) {
-            System.err.println("X-Username header missing");
-            return null;
-        }
-
-        try {
-            ResponseEntity<Map> response = restTemplate.getForEntity(
-                "http://auth-service:8090/auth/user-id?username=" + username,
-                Map.class
-            );
-
-            if (response.getBody() != null && response.getBody().containsKey("userId")) {
-                return Long.valueOf(response.getBody().get("userId").toString());
-            }
-
-            System.err.println("Failed to resolve userId for username: " + username);
-        } catch (Exception e) {
-            System.err.println("Failed to get userId from auth service: " + e.getMessage());
-        }
-
-        return null;
-    }
 }
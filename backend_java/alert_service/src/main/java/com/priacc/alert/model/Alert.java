@@ -1,10 +1,11 @@
 package com.priacc.alert.model;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.ColumnDefault;
 import java.time.Instant;
 
 @Entity
-@Table(name = "alerts")
+@Table(name = "alerts", indexes = @Index(name = "idx_alerts_user_id_id", columnList = "user_id, id"))
 public class Alert {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -18,6 +19,13 @@ public class Alert {
     @Column(name = "user_id")
     private Long userId;
 
+    /** How many alerts were coalesced into this one; see AlertCoalescer. */
+    @ColumnDefault("1")
+    private Integer occurrences;
+
+    @Column(name = "last_seen")
+    private Instant lastSeen;
+
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
 
@@ -31,4 +39,8 @@ public class Alert {
     public void setTimestamp(java.time.Instant timestamp) { this.timestamp = timestamp; }
     public Long getUserId() { return this.userId; }
     public void setUserId(Long userId) { this.userId = userId; }
+    public Integer getOccurrences() { return this.occurrences; }
+    public void setOccurrences(Integer occurrences) { this.occurrences = occurrences; }
+    public Instant getLastSeen() { return this.lastSeen; }
+    public void setLastSeen(Instant lastSeen) { this.lastSeen = lastSeen; }
 }
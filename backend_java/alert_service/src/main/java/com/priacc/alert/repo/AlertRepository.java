@@ -1,8 +1,37 @@
 package com.priacc.alert.repo;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import com.priacc.alert.model.Alert;
+import org.springframework.data.domain.Limit;
+import java.time.Instant;
 import java.util.List;
-public interface AlertRepository extends JpaRepository<Alert, Long> {
+import java.util.Optional;
+import java.util.stream.Stream;
+public interface AlertRepository extends JpaRepository<Alert, Long>, JpaSpecificationExecutor<Alert> {
     List<Alert> findByUserId(Long userId);
+
+    /** The user's alerts created after the given id, oldest first; for resuming /alerts/stream. */
+    List<Alert> findByUserIdAndIdGreaterThanOrderById(Long userId, Long id, Limit limit);
+
+    Optional<Alert> findTopByUserIdOrderByIdDesc(Long userId);
+
+    /** Counts repeats onto an alert in place; returns 0 if it no longer exists. */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Alert a set a.occurrences = coalesce(a.occurrences, 1) + :count,"
+        + " a.lastSeen = case when a.lastSeen is null or a.lastSeen < :seen then :seen else a.lastSeen end"
+        + " where a.id = :id")
+    int addOccurrences(Long id, int count, Instant seen);
+
+    /** Reads through a server-side cursor: call inside a transaction and close the stream. */
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    Stream<Alert> streamByUserIdOrderById(Long userId);
 }
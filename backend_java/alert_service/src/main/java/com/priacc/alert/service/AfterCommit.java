@@ -0,0 +1,24 @@
+package com.priacc.alert.service;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/** Defers in-memory side effects of a write until its transaction has committed. */
+final class AfterCommit {
+
+    private AfterCommit() {}
+
+    /** Runs the action once the current transaction commits, or now if there is none. */
+    static void run(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
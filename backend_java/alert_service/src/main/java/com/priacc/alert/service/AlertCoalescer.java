@@ -0,0 +1,144 @@
+package com.priacc.alert.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import com.priacc.alert.model.Alert;
+import com.priacc.alert.repo.AlertRepository;
+
+/**
+ * Folds repeated alerts into the one already stored: an alert whose fingerprint (its user plus
+ * the alerts.coalescing.fingerprint fields) matches one stored less than alerts.coalescing.window
+ * ago adds to that alert's occurrences and lastSeen instead of becoming a new row. The window
+ * slides: every repeat restarts it.
+ *
+ * Open windows are kept in memory, fingerprint to alert id, at most alerts.coalescing.max-entries
+ * of them (least recently used go first), and only after the transaction that stored the alert
+ * commits. The index is best effort: after a restart or an eviction, or when two alerts with a
+ * new fingerprint are stored at the same time, the next alert gets a row of its own. Only new
+ * rows are handed to the {@link AlertDispatcher}; repeats are not dispatched again.
+ */
+@Component
+public class AlertCoalescer {
+
+    /** The alerts stored, one per fingerprint, and how many of them are new rows. */
+    public record Result(List<Alert> alerts, int created) {}
+
+    private record Fingerprint(long userId, List<String> values) {}
+
+    private static final Map<String, Function<Alert, String>> FIELDS = Map.of(
+        "title", Alert::getTitle,
+        "message", Alert::getMessage,
+        "priority", Alert::getPriority
+    );
+
+    private final AlertRepository repo;
+    private final AlertStreamService streams;
+    private final AlertDispatcher dispatcher;
+    private final List<Function<Alert, String>> fingerprint = new ArrayList<>();
+    private final Cache<Fingerprint, Long> windows;   // null when coalescing is off
+    private final Counter coalesced;
+
+    public AlertCoalescer(AlertRepository repo, AlertStreamService streams, AlertDispatcher dispatcher,
+                          MeterRegistry meterRegistry,
+                          @Value("${alerts.coalescing.fingerprint:title,priority}") String[] fields,
+                          @Value("${alerts.coalescing.window:60s}") Duration window,
+                          @Value("${alerts.coalescing.max-entries:100000}") long maxEntries) {
+        this.repo = repo;
+        this.streams = streams;
+        this.dispatcher = dispatcher;
+        for (String field : fields) {
+            Function<Alert, String> value = FIELDS.get(field.trim());
+            if (value == null) {
+                throw new IllegalArgumentException("alerts.coalescing.fingerprint takes title, message and priority, not " + field);
+            }
+            fingerprint.add(value);
+        }
+        if (window.isZero() || window.isNegative()) {
+            this.windows = null;
+        } else {
+            this.windows = Caffeine.newBuilder()
+                    .maximumSize(maxEntries)
+                    .expireAfterWrite(window)
+                    .recordStats()
+                    .build();
+            CaffeineCacheMetrics.monitor(meterRegistry, windows, "alerts.coalescing");
+        }
+        this.coalesced = meterRegistry.counter("alerts.coalesced");
+    }
+
+    /**
+     * Stores the alerts, coalescing repeats within the batch and onto alerts in an open window.
+     * Runs in the caller's transaction.
+     */
+    Result save(List<Alert> alerts) {
+        Instant now = Instant.now();
+        Map<Fingerprint, List<Alert>> groups = new LinkedHashMap<>();
+        List<Alert> fresh = new ArrayList<>();
+        for (Alert alert : alerts) {
+            alert.setOccurrences(1);
+            alert.setLastSeen(alert.getTimestamp() != null ? alert.getTimestamp() : now);
+            if (windows == null || alert.getUserId() == null) {
+                fresh.add(alert);
+            } else {
+                groups.computeIfAbsent(fingerprint(alert), key -> new ArrayList<>()).add(alert);
+            }
+        }
+
+        List<Alert> stored = new ArrayList<>(groups.size() + fresh.size());
+        Map<Fingerprint, Long> repeated = new HashMap<>();
+        Map<Alert, Fingerprint> opened = new HashMap<>();
+        for (Map.Entry<Fingerprint, List<Alert>> group : groups.entrySet()) {
+            List<Alert> same = group.getValue();
+            Instant seen = same.stream().map(Alert::getLastSeen).max(Instant::compareTo).orElse(now);
+            Long id = windows.getIfPresent(group.getKey());
+            if (id != null && repo.addOccurrences(id, same.size(), seen) == 1) {
+                Alert updated = repo.findById(id).orElseThrow();
+                stored.add(updated);
+                repeated.put(group.getKey(), id);
+                streams.updatedAfterCommit(updated);
+                coalesced.increment(same.size());
+            } else {
+                Alert first = same.get(0);
+                first.setOccurrences(same.size());
+                first.setLastSeen(seen);
+                fresh.add(first);
+                opened.put(first, group.getKey());
+                coalesced.increment(same.size() - 1);
+            }
+        }
+
+        List<Alert> saved = repo.saveAll(fresh);
+        stored.addAll(saved);
+        streams.createdAfterCommit(saved);
+        dispatcher.dispatchAfterCommit(saved);
+        if (windows != null) {
+            AfterCommit.run(() -> {
+                repeated.forEach(windows::put);
+                opened.forEach((alert, key) -> windows.put(key, alert.getId()));
+            });
+        }
+        return new Result(stored, saved.size());
+    }
+
+    private Fingerprint fingerprint(Alert alert) {
+        String[] values = new String[fingerprint.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = fingerprint.get(i).apply(alert);
+        }
+        return new Fingerprint(alert.getUserId(), Arrays.asList(values));
+    }
+}
@@ -0,0 +1,265 @@
+package com.priacc.alert.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import com.priacc.alert.model.Alert;
+
+/**
+ * Sends new alerts to the alerts.dispatch.webhooks, off the request thread: each alert is queued
+ * once its transaction commits, in a bounded queue per priority, and worker threads POST them to
+ * every webhook as JSON arrays of up to alerts.dispatch.batch-size.
+ *
+ * Workers always take from the most urgent non-empty queue, and one of them only ever takes
+ * CRITICAL alerts, so these go out promptly however many LOW ones are queued or however slowly a
+ * webhook takes them. A full queue drops new alerts of its priority. A delivery that fails is
+ * retried for that webhook only, alerts.dispatch.retry-backoff apart and doubling, up to
+ * alerts.dispatch.max-attempts; retries wait on a scheduler, never on a worker.
+ */
+@Component
+public class AlertDispatcher {
+
+    /** Most urgent first; alerts without a known priority are dispatched as LOW. */
+    enum Priority {
+        CRITICAL, HIGH, MEDIUM, LOW;
+
+        static Priority of(String priority) {
+            if (priority != null) {
+                for (Priority value : values()) {
+                    if (value.name().equals(priority.toUpperCase(Locale.ROOT))) {
+                        return value;
+                    }
+                }
+            }
+            return LOW;
+        }
+    }
+
+    private record Queued(Alert alert, long enqueuedNanos) {}
+
+    /** The meters of one priority. */
+    private record Meters(Counter dropped, Counter delivered, Counter retried, Counter failed, Timer latency) {}
+
+    private static final Logger log = LoggerFactory.getLogger(AlertDispatcher.class);
+
+    private final RestTemplate restTemplate;
+    private final List<String> webhooks;
+    private final int batchSize;
+    private final int workers;
+    private final int maxAttempts;
+    private final Duration retryBackoff;
+    private final Map<Priority, BlockingQueue<Queued>> queues = new EnumMap<>(Priority.class);
+    private final Map<Priority, Meters> meters = new EnumMap<>(Priority.class);
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition queued = lock.newCondition();
+    private final ExecutorService threads = Executors.newThreadPerTaskExecutor(
+            Thread.ofPlatform().name("alert-dispatch-", 0).daemon().factory());
+    private final ExecutorService deliveries = Executors.newVirtualThreadPerTaskExecutor();
+    private final ScheduledExecutorService retries = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("alert-dispatch-retry").daemon().factory());
+    private volatile boolean running = true;
+
+    public AlertDispatcher(RestTemplate restTemplate, MeterRegistry meterRegistry,
+                           @Value("${alerts.dispatch.webhooks:}") String[] webhooks,
+                           @Value("${alerts.dispatch.queue-capacity:10000}") int queueCapacity,
+                           @Value("${alerts.dispatch.batch-size:100}") int batchSize,
+                           @Value("${alerts.dispatch.workers:4}") int workers,
+                           @Value("${alerts.dispatch.max-attempts:5}") int maxAttempts,
+                           @Value("${alerts.dispatch.retry-backoff:1s}") Duration retryBackoff) {
+        this.restTemplate = restTemplate;
+        this.webhooks = Arrays.stream(webhooks).map(String::trim).filter(url -> !url.isEmpty()).toList();
+        this.batchSize = batchSize;
+        this.workers = Math.max(2, workers);
+        this.maxAttempts = maxAttempts;
+        this.retryBackoff = retryBackoff;
+        for (Priority priority : Priority.values()) {
+            BlockingQueue<Queued> queue = new ArrayBlockingQueue<>(queueCapacity);
+            String tag = priority.name();
+            queues.put(priority, queue);
+            meterRegistry.gauge("alerts.dispatch.queue.depth", Tags.of("priority", tag), queue, BlockingQueue::size);
+            meters.put(priority, new Meters(
+                    meterRegistry.counter("alerts.dispatch.dropped", "priority", tag),
+                    meterRegistry.counter("alerts.dispatch.delivered", "priority", tag),
+                    meterRegistry.counter("alerts.dispatch.retried", "priority", tag),
+                    meterRegistry.counter("alerts.dispatch.failed", "priority", tag),
+                    Timer.builder("alerts.dispatch.latency")
+                            .description("From commit to delivery to every webhook")
+                            .tag("priority", tag)
+                            .publishPercentileHistogram()
+                            .register(meterRegistry)));
+        }
+    }
+
+    @PostConstruct
+    void start() {
+        if (webhooks.isEmpty()) {
+            log.info("No alerts.dispatch.webhooks configured; alerts are not dispatched");
+            return;
+        }
+        threads.submit(() -> work(true));
+        for (int i = 1; i < workers; i++) {
+            threads.submit(() -> work(false));
+        }
+    }
+
+    /** Queues the alerts for dispatch once the current transaction commits, or now if there is none. */
+    void dispatchAfterCommit(List<Alert> alerts) {
+        if (webhooks.isEmpty() || alerts.isEmpty()) {
+            return;
+        }
+        AfterCommit.run(() -> {
+            long now = System.nanoTime();
+            for (Alert alert : alerts) {
+                Priority priority = Priority.of(alert.getPriority());
+                if (!queues.get(priority).offer(new Queued(alert, now))) {
+                    meters.get(priority).dropped().increment();
+                }
+            }
+            lock.lock();
+            try {
+                queued.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    private void work(boolean criticalOnly) {
+        List<Queued> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                Priority priority = take(batch, criticalOnly);
+                if (priority != null) {
+                    List<Alert> alerts = batch.stream().map(Queued::alert).toList();
+                    long[] enqueued = batch.stream().mapToLong(Queued::enqueuedNanos).toArray();
+                    Delivery delivery = new Delivery(priority, alerts, enqueued, webhooks.size());
+                    for (String webhook : webhooks) {
+                        delivery.attempt(webhook, 1);
+                    }
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                log.warn("Alert dispatch worker failed, carrying on: {}", e.getMessage());
+                batch.clear();
+            }
+        }
+    }
+
+    /** Fills the batch from the most urgent non-empty queue, waiting until there is one. */
+    private Priority take(List<Queued> batch, boolean criticalOnly) throws InterruptedException {
+        while (true) {
+            for (Priority priority : Priority.values()) {
+                if (queues.get(priority).drainTo(batch, batchSize) > 0) {
+                    return priority;
+                }
+                if (criticalOnly) {
+                    break;
+                }
+            }
+            lock.lock();
+            try {
+                // Queues are checked again under the lock, so a signal can't slip in before the wait
+                if (criticalOnly ? queues.get(Priority.CRITICAL).isEmpty()
+                        : queues.values().stream().allMatch(BlockingQueue::isEmpty)) {
+                    queued.await();
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (!running) {
+                return null;
+            }
+        }
+    }
+
+    /** One batch on its way to every webhook. */
+    private final class Delivery {
+        final Priority priority;
+        final List<Alert> alerts;
+        final long[] enqueued;
+        int pending;   // webhooks still to take the batch; guarded by this
+        boolean failed;  // guarded by this
+
+        Delivery(Priority priority, List<Alert> alerts, long[] enqueued, int webhooks) {
+            this.priority = priority;
+            this.alerts = alerts;
+            this.enqueued = enqueued;
+            this.pending = webhooks;
+        }
+
+        void attempt(String webhook, int attempt) {
+            try {
+                restTemplate.postForEntity(webhook, alerts, Void.class);
+            } catch (RestClientException e) {
+                if (attempt >= maxAttempts) {
+                    log.warn("Giving up on {} {} alerts for {} after {} attempts: {}",
+                            alerts.size(), priority, webhook, attempt, e.getMessage());
+                    meters.get(priority).failed().increment(alerts.size());
+                    synchronized (this) {
+                        failed = true;
+                    }
+                    done();
+                    return;
+                }
+                meters.get(priority).retried().increment(alerts.size());
+                long delay = retryBackoff.toMillis() << Math.min(attempt - 1, 20);
+                retries.schedule(() -> deliveries.submit(() -> attempt(webhook, attempt + 1)),
+                        delay, TimeUnit.MILLISECONDS);
+                return;
+            }
+            done();
+        }
+
+        private void done() {
+            synchronized (this) {
+                if (--pending > 0 || failed) {
+                    return;
+                }
+            }
+            long now = System.nanoTime();
+            Meters priorityMeters = meters.get(priority);
+            for (long nanos : enqueued) {
+                priorityMeters.latency().record(now - nanos, TimeUnit.NANOSECONDS);
+            }
+            priorityMeters.delivered().increment(alerts.size());
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        threads.shutdownNow();
+        retries.shutdownNow();
+        deliveries.shutdownNow();
+        int left = queues.values().stream().mapToInt(BlockingQueue::size).sum();
+        if (left > 0) {
+            log.warn("Stopping with {} alerts not dispatched", left);
+        }
+    }
+}
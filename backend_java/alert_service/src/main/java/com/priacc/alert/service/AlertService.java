@@ -1,24 +1,105 @@
 package com.priacc.alert.service;
 
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 import com.priacc.alert.model.Alert;
 import com.priacc.alert.repo.AlertRepository;
 
 @Service
 public class AlertService {
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int MAX_PAGE_SIZE = 500;
+    public static final int MAX_BATCH_SIZE = 1000;
+
     private final AlertRepository repo;
-    public AlertService(AlertRepository repo) { this.repo = repo; }
+    private final EntityManager entityManager;
+    private final AlertCoalescer coalescer;
+    private final AlertStreamService streams;
+
+    public AlertService(AlertRepository repo, EntityManager entityManager, AlertCoalescer coalescer,
+                        AlertStreamService streams) {
+        this.repo = repo;
+        this.entityManager = entityManager;
+        this.coalescer = coalescer;
+        this.streams = streams;
+    }
+
+    /** Saves the alert, or counts it onto a matching one; returns the alert stored. */
+    @Transactional
+    public Alert create(Alert e) { return coalescer.save(List.of(e)).alerts().get(0); }
+
+    /** Saves the alerts in one transaction, coalescing repeats. */
+    @Transactional
+    public AlertCoalescer.Result createAll(List<Alert> alerts) { return coalescer.save(alerts); }
 
-    public Alert create(Alert e) { return repo.save(e); }
-    public List<Alert> list(Long userId) { 
-        if (userId != null) {
-            return repo.findByUserId(userId);
+    /**
+     * One page of alerts, newest first. Pages are keyset-based: pass the id of the last alert of
+     * the previous page as cursor, so every page is an index range scan on (user_id, id).
+     */
+    public Window<Alert> list(Long userId, String priority, Instant from, Instant to, Long cursor, int limit) {
+        Specification<Alert> spec = (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            if (userId != null) {
+                predicates.add(cb.equal(root.get("userId"), userId));
+            }
+            if (priority != null) {
+                predicates.add(cb.equal(cb.upper(root.get("priority")), priority.toUpperCase()));
+            }
+            if (from != null) {
+                predicates.add(cb.greaterThanOrEqualTo(root.get("timestamp"), from));
+            }
+            if (to != null) {
+                predicates.add(cb.lessThan(root.get("timestamp"), to));
+            }
+            return cb.and(predicates.toArray(Predicate[]::new));
+        };
+        ScrollPosition position = cursor != null ? ScrollPosition.forward(Map.of("id", cursor)) : ScrollPosition.keyset();
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        return repo.findBy(spec, q -> q.sortBy(Sort.by(Sort.Direction.DESC, "id")).limit(pageSize).scroll(position));
+    }
+
+    /**
+     * Hands every alert of the user to the sink in id order, reading through a database cursor and
+     * detaching each row once it's been written so the persistence context stays empty.
+     */
+    @Transactional(readOnly = true)
+    public void export(Long userId, Consumer<Alert> sink) {
+        try (Stream<Alert> rows = repo.streamByUserIdOrderById(userId)) {
+            rows.forEach(row -> {
+                sink.accept(row);
+                entityManager.detach(row);
+            });
         }
-        return repo.findAll(); 
     }
+
     public Optional<Alert> get(Long id) { return repo.findById(id); }
-    public Alert update(Alert e) { return repo.save(e); }
+    /** Replaces the alert; its occurrences and lastSeen are kept unless given. */
+    @Transactional
+    public Alert update(Alert e) {
+        repo.findById(e.getId()).ifPresent(existing -> {
+            if (e.getOccurrences() == null) {
+                e.setOccurrences(existing.getOccurrences());
+            }
+            if (e.getLastSeen() == null) {
+                e.setLastSeen(existing.getLastSeen());
+            }
+        });
+        Alert saved = repo.save(e);
+        streams.updatedAfterCommit(saved);
+        return saved;
+    }
     public void delete(Long id) { repo.deleteById(id); }
 }
@@ -0,0 +1,220 @@
+package com.priacc.alert.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.priacc.alert.model.Alert;
+import com.priacc.alert.repo.AlertRepository;
+
+/**
+ * Pushes each user's new and updated alerts to their open /alerts/stream connections as
+ * Server-Sent Events.
+ *
+ * An idle connection holds no request thread: the response is async, and each connection has a
+ * bounded queue drained by its own virtual thread, so a slow client only ever blocks itself. A
+ * connection whose queue fills up (alerts.stream.buffer) is closed; the client reconnects with
+ * Last-Event-ID and catches up from the database. Created alerts carry their id as the event id
+ * and are replayed on resume, up to alerts.stream.replay-limit of them; updates carry no id and
+ * are only sent live.
+ */
+@Service
+public class AlertStreamService {
+
+    private static final Logger log = LoggerFactory.getLogger(AlertStreamService.class);
+
+    private record Event(String name, Long id, String data) {}
+
+    private final AlertRepository repo;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<Long, Set<Connection>> connections = new ConcurrentHashMap<>();
+    private final AtomicInteger open = new AtomicInteger();
+    private final int maxConnections;
+    private final int bufferSize;
+    private final int replayLimit;
+    private final Duration heartbeat;
+    private final Duration timeout;
+
+    private final Counter sent;
+    private final Counter overflows;
+    private final Counter rejected;
+
+    public AlertStreamService(AlertRepository repo, ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                              @Value("${alerts.stream.max-connections:10000}") int maxConnections,
+                              @Value("${alerts.stream.buffer:256}") int bufferSize,
+                              @Value("${alerts.stream.replay-limit:1000}") int replayLimit,
+                              @Value("${alerts.stream.heartbeat-interval:15s}") Duration heartbeat,
+                              @Value("${alerts.stream.timeout:30m}") Duration timeout) {
+        this.repo = repo;
+        this.objectMapper = objectMapper;
+        this.maxConnections = maxConnections;
+        this.bufferSize = bufferSize;
+        this.replayLimit = replayLimit;
+        this.heartbeat = heartbeat;
+        this.timeout = timeout;
+        this.sent = meterRegistry.counter("alerts.stream.events");
+        this.overflows = meterRegistry.counter("alerts.stream.overflows");
+        this.rejected = meterRegistry.counter("alerts.stream.rejected");
+        meterRegistry.gauge("alerts.stream.connections", open);
+    }
+
+    /**
+     * Opens a stream of the user's alerts, first replaying those created after lastEventId if
+     * given. Returns null when the instance already holds alerts.stream.max-connections streams.
+     */
+    public SseEmitter open(long userId, Long lastEventId) {
+        if (open.incrementAndGet() > maxConnections) {
+            open.decrementAndGet();
+            rejected.increment();
+            return null;
+        }
+        SseEmitter emitter = new SseEmitter(timeout.toMillis());
+        Connection connection = new Connection(userId, emitter);
+        emitter.onCompletion(connection::close);
+        emitter.onTimeout(connection::close);
+        emitter.onError(error -> connection.close());
+        // Registered before the replay reads, so nothing committed in between is missed
+        connections.computeIfAbsent(userId, id -> ConcurrentHashMap.newKeySet()).add(connection);
+        connection.sender = senders.submit(() -> connection.run(lastEventId));
+        return emitter;
+    }
+
+    /** Streams the alerts once the current transaction commits, or now if there is none. */
+    void createdAfterCommit(List<Alert> alerts) {
+        AfterCommit.run(() -> alerts.forEach(alert -> publish("created", alert)));
+    }
+
+    void updatedAfterCommit(Alert alert) {
+        AfterCommit.run(() -> publish("updated", alert));
+    }
+
+    private void publish(String name, Alert alert) {
+        Set<Connection> listeners = alert.getUserId() != null ? connections.get(alert.getUserId()) : null;
+        if (listeners == null || listeners.isEmpty()) {
+            return;
+        }
+        Event event = new Event(name, "created".equals(name) ? alert.getId() : null, json(alert));
+        for (Connection connection : listeners) {
+            connection.offer(event);
+        }
+    }
+
+    private String json(Alert alert) {
+        try {
+            return objectMapper.writeValueAsString(alert);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize alert " + alert.getId(), e);
+        }
+    }
+
+    /** One open stream: its pending events and the virtual thread sending them. */
+    private final class Connection {
+        final long userId;
+        final SseEmitter emitter;
+        final BlockingQueue<Event> queue = new ArrayBlockingQueue<>(bufferSize);
+        volatile Future<?> sender;
+        volatile boolean closed;
+
+        Connection(long userId, SseEmitter emitter) {
+            this.userId = userId;
+            this.emitter = emitter;
+        }
+
+        void offer(Event event) {
+            if (!closed && !queue.offer(event)) {
+                overflows.increment();
+                log.debug("Closing the alert stream of user {}: {} events behind", userId, bufferSize);
+                close();
+            }
+        }
+
+        void run(Long lastEventId) {
+            try {
+                Set<Long> replayed = lastEventId != null ? replay(lastEventId) : null;
+                while (!closed) {
+                    Event event = queue.poll(heartbeat.toMillis(), TimeUnit.MILLISECONDS);
+                    if (event == null) {
+                        // Anything committed during the replay has been queued by now
+                        replayed = null;
+                        emitter.send(SseEmitter.event().comment("keep-alive"));
+                    } else if (event.id() == null || replayed == null || !replayed.remove(event.id())) {
+                        send(event);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException | IllegalStateException e) {
+                // The client went away, or the emitter already completed
+                log.debug("Alert stream of user {} ended: {}", userId, e.getMessage());
+            } finally {
+                emitter.complete();
+                close();
+            }
+        }
+
+        /**
+         * Sends the user's alerts created after lastEventId, oldest first, and returns their ids.
+         * If more than replayLimit were missed, sends a reset event instead (and returns null):
+         * the client should reload its list, and the stream carries on from the newest alert.
+         */
+        private Set<Long> replay(long lastEventId) throws IOException {
+            List<Alert> missed = repo.findByUserIdAndIdGreaterThanOrderById(userId, lastEventId, Limit.of(replayLimit + 1));
+            if (missed.size() > replayLimit) {
+                Long newest = repo.findTopByUserIdOrderByIdDesc(userId).map(Alert::getId).orElse(lastEventId);
+                emitter.send(SseEmitter.event().name("reset").id(String.valueOf(newest)).data("{}"));
+                return null;
+            }
+            Set<Long> replayed = new HashSet<>();
+            for (Alert alert : missed) {
+                send(new Event("created", alert.getId(), json(alert)));
+                replayed.add(alert.getId());
+            }
+            return replayed;
+        }
+
+        private void send(Event event) throws IOException {
+            SseEmitter.SseEventBuilder builder = SseEmitter.event().name(event.name()).data(event.data());
+            if (event.id() != null) {
+                builder.id(String.valueOf(event.id()));
+            }
+            emitter.send(builder);
+            sent.increment();
+        }
+
+        synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            connections.computeIfPresent(userId, (id, set) -> {
+                set.remove(this);
+                return set.isEmpty() ? null : set;
+            });
+            open.decrementAndGet();
+            if (sender != null) {
+                sender.cancel(true);
+            }
+        }
+    }
+}
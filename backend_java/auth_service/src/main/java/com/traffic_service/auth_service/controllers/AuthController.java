@@ -1,5 +1,7 @@
 package com.traffic_service.auth_service.controllers;
 
+import com.traffic_service.auth_service.dto.UserIdentity;
+import com.traffic_service.auth_service.dto.UserLookupRequest;
 import com.traffic_service.auth_service.model.AppUser;
 import com.traffic_service.auth_service.service.AuthService;
 import com.traffic_service.auth_service.security.JwtTokenProvider;
@@ -13,6 +15,8 @@ import java.util.*;
 @RequestMapping("/auth")  // ✅ no /api prefix, since gateway strips it
 public class AuthController {
 
+    private static final int MAX_BULK_LOOKUP = 1000;
+
     private final AuthService authService;
     private final JwtTokenProvider jwtTokenProvider;
     private final PasswordEncoder passwordEncoder;
@@ -38,7 +42,7 @@ public class AuthController {
             return ResponseEntity.status(401).body("Invalid username or password");
         }
 
-        String token = jwtTokenProvider.generateToken(username, user.getRoles());
+        String token = jwtTokenProvider.generateToken(user.getId(), username, user.getRoles());
 
         return ResponseEntity.ok(Map.of(
                 "username", username,
@@ -49,14 +53,45 @@ public class AuthController {
 
 @GetMapping("/user-id")
 public ResponseEntity<?> getUserId(@RequestParam("username") String username) {
-    Optional<AppUser> userOptional = authService.findByUsername(username);
+    Optional<UserIdentity> userOptional = authService.findIdentityByUsername(username);
     if (userOptional.isEmpty()) {
         return ResponseEntity.status(404).body(Map.of("error", "User not found"));
     }
     
-    AppUser user = userOptional.get();
+    UserIdentity user = userOptional.get();
     return ResponseEntity.ok(Map.of("userId", user.getId()));
 }
+
+// Resolves usernames -> ids, or ids -> usernames, in a single IN query without loading roles
+@PostMapping("/user-ids")
+public ResponseEntity<?> getUserIds(@RequestBody UserLookupRequest request) {
+    boolean byUsername = request.usernames() != null && !request.usernames().isEmpty();
+    boolean byId = request.ids() != null && !request.ids().isEmpty();
+    if (byUsername == byId) {
+        return ResponseEntity.badRequest().body(Map.of("error", "Provide either usernames or ids"));
+    }
+
+    int requested = byUsername ? request.usernames().size() : request.ids().size();
+    if (requested > MAX_BULK_LOOKUP) {
+        return ResponseEntity.badRequest().body(Map.of("error", "At most " + MAX_BULK_LOOKUP + " entries per request"));
+    }
+
+    if (byUsername) {
+        Map<String, Long> userIds = new LinkedHashMap<>();
+        for (UserIdentity user : authService.findIdentitiesByUsernames(new LinkedHashSet<>(request.usernames()))) {
+            userIds.put(user.getUsername(), user.getId());
+        }
+        List<String> missing = request.usernames().stream().distinct().filter(u -> !userIds.containsKey(u)).toList();
+        return ResponseEntity.ok(Map.of("userIds", userIds, "missing", missing));
+    }
+
+    Map<Long, String> usernames = new LinkedHashMap<>();
+    for (UserIdentity user : authService.findIdentitiesByIds(new LinkedHashSet<>(request.ids()))) {
+        usernames.put(user.getId(), user.getUsername());
+    }
+    List<Long> missing = request.ids().stream().distinct().filter(id -> !usernames.containsKey(id)).toList();
+    return ResponseEntity.ok(Map.of("usernames", usernames, "missing", missing));
+}
    @PostMapping("/register")
 public ResponseEntity<?> register(@RequestBody Map<String, Object> request) {
     try {
@@ -0,0 +1,7 @@
+package com.traffic_service.auth_service.dto;
+
+// Closed projection: Spring Data selects only id and username, skipping the eager roles join
+public interface UserIdentity {
+    Long getId();
+    String getUsername();
+}
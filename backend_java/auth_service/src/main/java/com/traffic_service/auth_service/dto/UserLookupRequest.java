@@ -0,0 +1,6 @@
+package com.traffic_service.auth_service.dto;
+
+import java.util.List;
+
+// Exactly one of usernames or ids is expected per request
+public record UserLookupRequest(List<String> usernames, List<Long> ids) {}
@@ -2,10 +2,17 @@ package com.traffic_service.auth_service.repo;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import com.traffic_service.auth_service.dto.UserIdentity;
 import com.traffic_service.auth_service.model.AppUser;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<AppUser, Long> {
     Optional<AppUser> findByUsername(String username);
+
+    Optional<UserIdentity> findIdentityByUsername(String username);
+    List<UserIdentity> findIdentitiesByUsernameIn(Collection<String> usernames);
+    List<UserIdentity> findIdentitiesByIdIn(Collection<Long> ids);
 }
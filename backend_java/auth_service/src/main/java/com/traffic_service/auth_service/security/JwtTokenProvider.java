@@ -22,10 +22,16 @@ public class JwtTokenProvider {
         this.signKey = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
     }
 
-    public String generateToken(String username, Set<String> roles) {
+    public static final String USER_ID_CLAIM = "uid";
+    public static final String ROLES_CLAIM = "roles";
+
+    // The gateway forwards uid/roles as trusted headers so downstream services
+    // don't have to call back into auth-service on every request.
+    public String generateToken(Long userId, String username, Set<String> roles) {
         return Jwts.builder()
             .setSubject(username)
-            .claim("roles", roles)
+            .claim(USER_ID_CLAIM, userId)
+            .claim(ROLES_CLAIM, roles)
             .setIssuedAt(new Date())
             .setExpiration(new Date(System.currentTimeMillis() + EXPIRATION_TIME))
             .signWith(signKey, SignatureAlgorithm.HS256)
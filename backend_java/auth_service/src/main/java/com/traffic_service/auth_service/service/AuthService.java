@@ -4,9 +4,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import com.traffic_service.auth_service.dto.UserIdentity;
 import com.traffic_service.auth_service.model.AppUser;
 import com.traffic_service.auth_service.repo.UserRepository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
@@ -60,6 +63,19 @@ public class AuthService {
         return userRepository.findByUsername(username);
     }
 
+    public Optional<UserIdentity> findIdentityByUsername(String username) {
+        return userRepository.findIdentityByUsername(username);
+    }
+
+    // One IN-query per call; callers are expected to cap the collection size
+    public List<UserIdentity> findIdentitiesByUsernames(Collection<String> usernames) {
+        return userRepository.findIdentitiesByUsernameIn(usernames);
+    }
+
+    public List<UserIdentity> findIdentitiesByIds(Collection<Long> ids) {
+        return userRepository.findIdentitiesByIdIn(ids);
+    }
+
     public boolean validatePassword(String rawPassword, String encodedPassword) {
         return passwordEncoder.matches(rawPassword, encodedPassword);
     }
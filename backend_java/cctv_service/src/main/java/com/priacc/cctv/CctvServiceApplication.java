@@ -1,9 +1,12 @@
 package com.priacc.cctv;
 
+import com.priacc.common.security.UserIdResolver;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Import;
 
 @SpringBootApplication
+@Import(UserIdResolver.class)
 public class CctvServiceApplication {
     public static void main(String[] args) {
         SpringApplication.run(CctvServiceApplication.class, args);
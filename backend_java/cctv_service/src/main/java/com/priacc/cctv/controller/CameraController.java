@@ -1,24 +1,44 @@
 package com.priacc.cctv.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.data.domain.Window;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.beans.factory.annotation.Autowired;
 import java.net.URI;
+import java.time.Instant;
 import java.util.List;
-import java.util.Map;
+import com.priacc.common.security.UserIdResolver;
+import com.priacc.common.web.ExportWriter;
 import com.priacc.cctv.model.Camera;
 import com.priacc.cctv.service.CameraService;
 
 @RestController
 @RequestMapping("/cameras")
 public class CameraController {
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private static final List<ExportWriter.Column<Camera>> EXPORT_COLUMNS = List.of(
+        new ExportWriter.Column<>("id", Camera::getId),
+        new ExportWriter.Column<>("name", Camera::getName),
+        new ExportWriter.Column<>("location", Camera::getLocation),
+        new ExportWriter.Column<>("status", Camera::getStatus),
+        new ExportWriter.Column<>("streamUrl", Camera::getStreamUrl),
+        new ExportWriter.Column<>("lastUpdated", Camera::getLastUpdated),
+        new ExportWriter.Column<>("userId", Camera::getUserId)
+    );
+
     private final CameraService service;
+    private final ObjectMapper objectMapper;
     
     @Autowired
-    private RestTemplate restTemplate;
+    private UserIdResolver userIdResolver;
     
-    public CameraController(CameraService service) { this.service = service; }
+    public CameraController(CameraService service, ObjectMapper objectMapper) {
+        this.service = service;
+        this.objectMapper = objectMapper;
+    }
 
     @PostMapping
     public ResponseEntity<Camera> create(@RequestBody Camera dto) {
@@ -32,31 +52,44 @@ public class CameraController {
     }
 
     @GetMapping("/list")
-    public ResponseEntity<List<Camera>> list(@RequestHeader(value = "X-Username", required = false) String username) {
-        if (username == null) {
-            System.err.println("X-Username header missing");
+    public ResponseEntity<List<Camera>> list(
+            @RequestHeader(value = "X-Username", required = false) String username,
+            @RequestHeader(value = "X-User-Id", required = false) Long userIdHeader,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) Instant from,
+            @RequestParam(required = false) Instant to,
+            @RequestParam(required = false) Long cursor,
+            @RequestParam(defaultValue = "" + CameraService.DEFAULT_PAGE_SIZE) int limit) {
+        Long userId = userIdResolver.resolve(userIdHeader, username);
+        if (userId == null) {
             return ResponseEntity.status(401).build();
         }
 
-        Long userId = null;
-        try {
-            ResponseEntity<Map> response = restTemplate.getForEntity(
-                "http://auth-service:8090/auth/user-id?username=" + username, 
-                Map.class
-            );
-            if (response.getBody() != null && response.getBody().containsKey("userId")) {
-                userId = Long.valueOf(response.getBody().get("userId").toString());
-            }
-        } catch (Exception e) {
-            System.err.println("Failed to get userId from auth service: " + e.getMessage());
-            return ResponseEntity.status(401).build(); // Fail closed
+        Window<Camera> page = service.list(userId, status, from, to, cursor, limit);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.hasNext()) {
+            response.header(NEXT_CURSOR_HEADER, String.valueOf(page.getContent().get(page.size() - 1).getId()));
         }
+        return response.body(page.getContent());
+    }
 
+    /** All of the user's cameras, oldest first, streamed as NDJSON (default) or CSV. */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(
+            @RequestHeader(value = "X-Username", required = false) String username,
+            @RequestHeader(value = "X-User-Id", required = false) Long userIdHeader,
+            @RequestParam(defaultValue = "ndjson") String format) {
+        Long userId = userIdResolver.resolve(userIdHeader, username);
         if (userId == null) {
-             return ResponseEntity.status(401).build();
+            return ResponseEntity.status(401).build();
+        }
+        ExportWriter.Format exportFormat = ExportWriter.Format.parse(format);
+        if (exportFormat == null) {
+            return ResponseEntity.badRequest().build();
         }
 
-        return ResponseEntity.ok(service.list(userId));
+        return ExportWriter.response(exportFormat, "cameras", objectMapper, EXPORT_COLUMNS,
+                sink -> service.export(userId, sink));
     }
 
     @GetMapping("/{id}")
@@ -4,7 +4,7 @@ import jakarta.persistence.*;
 import java.time.Instant;
 
 @Entity
-@Table(name = "cameras")
+@Table(name = "cameras", indexes = @Index(name = "idx_cameras_user_id_id", columnList = "user_id, id"))
 public class Camera {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -1,10 +1,22 @@
 package com.priacc.cctv.repo;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.QueryHints;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import com.priacc.cctv.model.Camera;
 import java.util.List;
+import java.util.stream.Stream;
 
-public interface CameraRepository extends JpaRepository<Camera, Long> {
+public interface CameraRepository extends JpaRepository<Camera, Long>, JpaSpecificationExecutor<Camera> {
     List<Camera> findByUserId(Long userId);
+
+    /** Reads through a server-side cursor: call inside a transaction and close the stream. */
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    Stream<Camera> streamByUserIdOrderById(Long userId);
 }
 
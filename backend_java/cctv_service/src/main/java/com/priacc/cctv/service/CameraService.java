@@ -1,25 +1,79 @@
 package com.priacc.cctv.service;
 
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 import com.priacc.cctv.model.Camera;
 import com.priacc.cctv.repo.CameraRepository;
 
 @Service
 public class CameraService {
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int MAX_PAGE_SIZE = 500;
+
     private final CameraRepository repo;
-    public CameraService(CameraRepository repo) { this.repo = repo; }
+    private final EntityManager entityManager;
+
+    public CameraService(CameraRepository repo, EntityManager entityManager) {
+        this.repo = repo;
+        this.entityManager = entityManager;
+    }
 
     public Camera create(Camera e) { return repo.save(e); }
-    public List<Camera> list(Long userId) { 
-        if (userId != null) {
-            return repo.findByUserId(userId);
+
+    /**
+     * One page of cameras, newest first. Pages are keyset-based: pass the id of the last camera of
+     * the previous page as cursor, so every page is an index range scan on (user_id, id).
+     */
+    public Window<Camera> list(Long userId, String status, Instant from, Instant to, Long cursor, int limit) {
+        Specification<Camera> spec = (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            if (userId != null) {
+                predicates.add(cb.equal(root.get("userId"), userId));
+            }
+            if (status != null) {
+                predicates.add(cb.equal(cb.upper(root.get("status")), status.toUpperCase()));
+            }
+            if (from != null) {
+                predicates.add(cb.greaterThanOrEqualTo(root.get("lastUpdated"), from));
+            }
+            if (to != null) {
+                predicates.add(cb.lessThan(root.get("lastUpdated"), to));
+            }
+            return cb.and(predicates.toArray(Predicate[]::new));
+        };
+        ScrollPosition position = cursor != null ? ScrollPosition.forward(Map.of("id", cursor)) : ScrollPosition.keyset();
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        return repo.findBy(spec, q -> q.sortBy(Sort.by(Sort.Direction.DESC, "id")).limit(pageSize).scroll(position));
+    }
+
+    /**
+     * Hands every camera of the user to the sink in id order, reading through a database cursor and
+     * detaching each row once it's been written so the persistence context stays empty.
+     */
+    @Transactional(readOnly = true)
+    public void export(Long userId, Consumer<Camera> sink) {
+        try (Stream<Camera> rows = repo.streamByUserIdOrderById(userId)) {
+            rows.forEach(row -> {
+                sink.accept(row);
+                entityManager.detach(row);
+            });
         }
-        return repo.findAll(); 
     }
+
     public Optional<Camera> get(Long id) { return repo.findById(id); }
     public Camera update(Camera e) { return repo.save(e); }
     public void delete(Long id) { repo.deleteById(id); }
 }
-
@@ -0,0 +1,221 @@
+package com.traffic_service.gateway_service.config;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cloud.gateway.config.GatewayProperties;
+import org.springframework.cloud.gateway.config.HttpClientCustomizer;
+import org.springframework.cloud.gateway.config.HttpClientFactory;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.config.HttpClientSslConfigurer;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteDefinition;
+import org.springframework.cloud.gateway.support.RouteMetadataUtils;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.server.ServerWebExchange;
+import io.netty.channel.ChannelOption;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * Gives each configured route's backend its own bounded connection pool, so a hung service
+ * can only exhaust its own connections and pending-acquire queue instead of the gateway's.
+ *
+ * Pools are keyed by backend host:port, so routes that share a backend (traffic-service
+ * serves both incidents and predictions) share that backend's bulkhead; the first route that
+ * configures one sets its limits. A route marked dedicated gets a pool of its own instead, with
+ * its own client, so its limits hold apart from the host's: alert-stream's long-lived SSE
+ * connections can't take alert-service's request/response connections, nor the other way round.
+ */
+@Configuration
+@EnableConfigurationProperties(BulkheadHttpClientConfig.BulkheadProperties.class)
+public class BulkheadHttpClientConfig {
+
+    @ConfigurationProperties("gateway.bulkhead")
+    public static class BulkheadProperties {
+        private Map<String, Route> routes = new LinkedHashMap<>();
+
+        public Map<String, Route> getRoutes() { return routes; }
+        public void setRoutes(Map<String, Route> routes) { this.routes = routes; }
+
+        public static class Route {
+            private int maxConnections = 50;
+            private int pendingAcquireMaxCount = 100;
+            private Duration pendingAcquireTimeout = Duration.ofSeconds(2);
+            private boolean dedicated;
+
+            public int getMaxConnections() { return maxConnections; }
+            public void setMaxConnections(int maxConnections) { this.maxConnections = maxConnections; }
+            public int getPendingAcquireMaxCount() { return pendingAcquireMaxCount; }
+            public void setPendingAcquireMaxCount(int pendingAcquireMaxCount) { this.pendingAcquireMaxCount = pendingAcquireMaxCount; }
+            public Duration getPendingAcquireTimeout() { return pendingAcquireTimeout; }
+            public void setPendingAcquireTimeout(Duration pendingAcquireTimeout) { this.pendingAcquireTimeout = pendingAcquireTimeout; }
+            public boolean isDedicated() { return dedicated; }
+            public void setDedicated(boolean dedicated) { this.dedicated = dedicated; }
+        }
+    }
+
+    // Replaces the auto-configured factory (it is @ConditionalOnMissingBean)
+    @Bean
+    public HttpClientFactory gatewayHttpClientFactory(
+            HttpClientProperties properties,
+            ServerProperties serverProperties,
+            List<HttpClientCustomizer> customizers,
+            HttpClientSslConfigurer sslConfigurer,
+            GatewayProperties gatewayProperties,
+            BulkheadProperties bulkheads) {
+        Map<InetSocketAddress, BulkheadProperties.Route> hosts = new LinkedHashMap<>();
+        for (RouteDefinition route : gatewayProperties.getRoutes()) {
+            BulkheadProperties.Route bulkhead = bulkheads.getRoutes().get(route.getId());
+            URI uri = route.getUri();
+            if (bulkhead != null && !bulkhead.isDedicated() && uri != null && uri.getHost() != null) {
+                int port = uri.getPort() != -1 ? uri.getPort() : ("https".equals(uri.getScheme()) ? 443 : 80);
+                hosts.putIfAbsent(InetSocketAddress.createUnresolved(uri.getHost(), port), bulkhead);
+            }
+        }
+
+        return new HttpClientFactory(properties, serverProperties, sslConfigurer, customizers) {
+            @Override
+            protected ConnectionProvider buildConnectionProvider(HttpClientProperties properties) {
+                HttpClientProperties.Pool pool = properties.getPool();
+                if (hosts.isEmpty() || pool.getType() == HttpClientProperties.Pool.PoolType.DISABLED) {
+                    return super.buildConnectionProvider(properties);
+                }
+
+                // Mirrors the default provider, plus a dedicated pool spec per backend host
+                ConnectionProvider.Builder builder = ConnectionProvider.builder(pool.getName());
+                if (pool.getType() == HttpClientProperties.Pool.PoolType.FIXED) {
+                    builder.maxConnections(pool.getMaxConnections())
+                            .pendingAcquireMaxCount(-1)
+                            .pendingAcquireTimeout(Duration.ofMillis(pool.getAcquireTimeout()));
+                } else {
+                    builder.maxConnections(Integer.MAX_VALUE)
+                            .pendingAcquireTimeout(Duration.ZERO)
+                            .pendingAcquireMaxCount(-1);
+                }
+                if (pool.getMaxIdleTime() != null) {
+                    builder.maxIdleTime(pool.getMaxIdleTime());
+                }
+                if (pool.getMaxLifeTime() != null) {
+                    builder.maxLifeTime(pool.getMaxLifeTime());
+                }
+                builder.evictInBackground(pool.getEvictionInterval());
+                builder.metrics(pool.isMetrics());
+
+                hosts.forEach((address, bulkhead) -> builder.forRemoteHost(address, spec -> {
+                    spec.maxConnections(bulkhead.getMaxConnections())
+                            .pendingAcquireMaxCount(bulkhead.getPendingAcquireMaxCount())
+                            .pendingAcquireTimeout(bulkhead.getPendingAcquireTimeout())
+                            .evictInBackground(pool.getEvictionInterval());
+                    if (pool.getMaxIdleTime() != null) {
+                        spec.maxIdleTime(pool.getMaxIdleTime());
+                    }
+                    if (pool.getMaxLifeTime() != null) {
+                        spec.maxLifeTime(pool.getMaxLifeTime());
+                    }
+                }));
+                return builder.build();
+            }
+        };
+    }
+
+    /** Builds a client for each route with a dedicated bulkhead, and routes those routes through it. */
+    @Bean
+    public DedicatedPoolRoutingFilter dedicatedPoolRoutingFilter(
+            HttpClient httpClient,
+            ObjectProvider<List<HttpHeadersFilter>> headersFilters,
+            HttpClientProperties properties,
+            ServerProperties serverProperties,
+            List<HttpClientCustomizer> customizers,
+            HttpClientSslConfigurer sslConfigurer,
+            BulkheadProperties bulkheads) throws Exception {
+        Map<String, HttpClient> clients = new LinkedHashMap<>();
+        for (Map.Entry<String, BulkheadProperties.Route> entry : bulkheads.getRoutes().entrySet()) {
+            String routeId = entry.getKey();
+            BulkheadProperties.Route bulkhead = entry.getValue();
+            if (!bulkhead.isDedicated()) {
+                continue;
+            }
+            HttpClientFactory factory = new HttpClientFactory(properties, serverProperties, sslConfigurer, customizers) {
+                @Override
+                protected ConnectionProvider buildConnectionProvider(HttpClientProperties properties) {
+                    HttpClientProperties.Pool pool = properties.getPool();
+                    ConnectionProvider.Builder builder = ConnectionProvider.builder("bulkhead-" + routeId)
+                            .maxConnections(bulkhead.getMaxConnections())
+                            .pendingAcquireMaxCount(bulkhead.getPendingAcquireMaxCount())
+                            .pendingAcquireTimeout(bulkhead.getPendingAcquireTimeout())
+                            .evictInBackground(pool.getEvictionInterval())
+                            .metrics(pool.isMetrics());
+                    if (pool.getMaxIdleTime() != null) {
+                        builder.maxIdleTime(pool.getMaxIdleTime());
+                    }
+                    if (pool.getMaxLifeTime() != null) {
+                        builder.maxLifeTime(pool.getMaxLifeTime());
+                    }
+                    return builder.build();
+                }
+            };
+            factory.setSingleton(false);
+            clients.put(routeId, factory.getObject());
+        }
+        return new DedicatedPoolRoutingFilter(httpClient, headersFilters, properties, clients);
+    }
+
+    /**
+     * Sends requests for routes with a dedicated bulkhead through that route's own client. Runs
+     * just ahead of the default routing filter, which then sees the exchange already routed;
+     * every other route is left to the default one.
+     */
+    public static class DedicatedPoolRoutingFilter extends NettyRoutingFilter {
+
+        private final Map<String, HttpClient> clients;
+
+        DedicatedPoolRoutingFilter(HttpClient httpClient, ObjectProvider<List<HttpHeadersFilter>> headersFilters,
+                                   HttpClientProperties properties, Map<String, HttpClient> clients) {
+            super(httpClient, headersFilters, properties);
+            this.clients = clients;
+        }
+
+        @Override
+        public int getOrder() {
+            return super.getOrder() - 1;
+        }
+
+        @Override
+        public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+            Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+            if (route == null || !clients.containsKey(route.getId())) {
+                return chain.filter(exchange);
+            }
+            return super.filter(exchange, chain);
+        }
+
+        @Override
+        protected HttpClient getHttpClient(Route route, ServerWebExchange exchange) {
+            HttpClient client = clients.get(route.getId());
+            Object connectTimeout = route.getMetadata().get(RouteMetadataUtils.CONNECT_TIMEOUT_ATTR);
+            if (connectTimeout != null) {
+                // Metadata binds from properties as strings, or as numbers when set in code
+                int millis = connectTimeout instanceof Number number ? number.intValue()
+                        : Integer.parseInt(connectTimeout.toString());
+                return client.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, millis);
+            }
+            return client;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.traffic_service.gateway_service.config;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.core.registry.EntryAddedEvent;
+import io.github.resilience4j.core.registry.EntryRemovedEvent;
+import io.github.resilience4j.core.registry.EntryReplacedEvent;
+import io.github.resilience4j.core.registry.RegistryEventConsumer;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class CircuitBreakerMetricsConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreakerMetricsConfig.class);
+
+    // State gauges come from resilience4j-micrometer; this adds a counter per transition
+    @Bean
+    public RegistryEventConsumer<CircuitBreaker> circuitBreakerTransitionMetrics(MeterRegistry meterRegistry) {
+        return new RegistryEventConsumer<>() {
+            @Override
+            public void onEntryAddedEvent(EntryAddedEvent<CircuitBreaker> event) {
+                CircuitBreaker breaker = event.getAddedEntry();
+                breaker.getEventPublisher().onStateTransition(transition -> {
+                    log.warn("Circuit breaker {} {}", breaker.getName(), transition.getStateTransition());
+                    meterRegistry.counter("gateway.circuitbreaker.transitions",
+                            "name", breaker.getName(),
+                            "from", transition.getStateTransition().getFromState().name(),
+                            "to", transition.getStateTransition().getToState().name()
+                    ).increment();
+                });
+            }
+
+            @Override
+            public void onEntryRemovedEvent(EntryRemovedEvent<CircuitBreaker> event) {}
+
+            @Override
+            public void onEntryReplacedEvent(EntryReplacedEvent<CircuitBreaker> event) {}
+        };
+    }
+}
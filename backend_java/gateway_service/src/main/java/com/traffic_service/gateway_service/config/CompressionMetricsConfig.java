@@ -0,0 +1,78 @@
+package com.traffic_service.gateway_service.config;
+
+import com.traffic_service.gateway_service.filter.ResponseSizeMetricsFilter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.LastHttpContent;
+import org.springframework.boot.web.embedded.netty.NettyServerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.netty.NettyPipeline;
+
+/**
+ * Response compression itself is Reactor Netty's streaming compressor, enabled through
+ * server.compression.*. This adds the "after" half of the payload metrics: a handler placed
+ * right behind the HTTP codec sees each response as it goes on the wire, already compressed,
+ * and records its body size in gateway.response.wire.bytes{route,encoding}.
+ */
+@Configuration
+public class CompressionMetricsConfig {
+
+    private static final String HANDLER_NAME = "gateway.wireBytesMetrics";
+
+    @Bean
+    public NettyServerCustomizer wireBytesMetricsCustomizer(MeterRegistry meterRegistry) {
+        return httpServer -> httpServer.doOnChannelInit((observer, channel, remoteAddress) -> {
+            // HTTP/1.1 only; the codec is installed by the default initializer before this runs
+            if (channel.pipeline().get(NettyPipeline.HttpCodec) != null) {
+                channel.pipeline().addAfter(NettyPipeline.HttpCodec, HANDLER_NAME, new WireBytesHandler(meterRegistry));
+            }
+        });
+    }
+
+    // One instance per connection; HTTP/1.1 writes one response at a time
+    static final class WireBytesHandler extends ChannelOutboundHandlerAdapter {
+        private final MeterRegistry meterRegistry;
+        private long bytes;
+        private String encoding = "identity";
+
+        WireBytesHandler(MeterRegistry meterRegistry) {
+            this.meterRegistry = meterRegistry;
+        }
+
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+            if (msg instanceof HttpResponse response) {
+                bytes = 0;
+                String contentEncoding = response.headers().get(HttpHeaderNames.CONTENT_ENCODING);
+                encoding = contentEncoding != null ? contentEncoding : "identity";
+            }
+            if (msg instanceof HttpContent content) {
+                bytes += content.content().readableBytes();
+            } else if (msg instanceof ByteBuf buffer) {
+                bytes += buffer.readableBytes();
+            }
+            if (msg instanceof LastHttpContent) {
+                String route = ctx.channel().attr(ResponseSizeMetricsFilter.ROUTE_ID).getAndSet(null);
+                if (route != null) {
+                    DistributionSummary.builder("gateway.response.wire.bytes")
+                            .description("Response body size as sent, after compression")
+                            .baseUnit("bytes")
+                            .tag("route", route)
+                            .tag("encoding", encoding)
+                            .publishPercentileHistogram()
+                            .register(meterRegistry)
+                            .record(bytes);
+                }
+            }
+            ctx.write(msg, promise);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.traffic_service.gateway_service.filter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.support.HasRouteId;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-route adaptive concurrency limit (AIMD on downstream latency).
+ *
+ * The limit grows by one when a request completes within tolerance of the route's long-term
+ * latency baseline while the route is busy, and is cut multiplicatively on slow responses,
+ * 5xx or errors. Latency is measured to the moment the response is committed, so slow
+ * clients reading the body don't count against the backend. Writes (anything but GET/HEAD)
+ * may use the whole limit, while reads are admitted only up to limit * (1 - writeReserve),
+ * so dashboard polling is shed before alert submissions. Shed requests get an immediate 503.
+ * <pre>filters[n]=AdaptiveConcurrencyFilter=initialLimit,minLimit,maxLimit</pre>
+ */
+@Component("AdaptiveConcurrencyFilter")
+public class AdaptiveConcurrencyFilter extends AbstractGatewayFilterFactory<AdaptiveConcurrencyFilter.Config> {
+
+    private final MeterRegistry meterRegistry;
+
+    public AdaptiveConcurrencyFilter(MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return List.of("initialLimit", "minLimit", "maxLimit");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        if (config.getMinLimit() < 1 || config.getMinLimit() > config.getMaxLimit()) {
+            throw new IllegalArgumentException("AdaptiveConcurrencyFilter needs 1 <= minLimit <= maxLimit");
+        }
+        String route = String.valueOf(config.getRouteId());
+        Limiter limiter = new Limiter(config);
+        Gauge.builder("gateway.concurrency.limit", limiter, Limiter::limit)
+                .description("Current adaptive in-flight limit")
+                .tag("route", route)
+                .register(meterRegistry);
+        Gauge.builder("gateway.concurrency.inflight", limiter, Limiter::inflight)
+                .description("Requests currently in flight to the route")
+                .tag("route", route)
+                .register(meterRegistry);
+        Counter shedReads = shedCounter(route, "read");
+        Counter shedWrites = shedCounter(route, "write");
+
+        return (exchange, chain) -> {
+            HttpMethod method = exchange.getRequest().getMethod();
+            boolean write = !HttpMethod.GET.equals(method) && !HttpMethod.HEAD.equals(method);
+            if (!limiter.tryAcquire(write)) {
+                (write ? shedWrites : shedReads).increment();
+                exchange.getResponse().getHeaders().set(HttpHeaders.RETRY_AFTER, "1");
+                exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+                return exchange.getResponse().setComplete();
+            }
+
+            long start = System.nanoTime();
+            AtomicBoolean sampled = new AtomicBoolean();
+            exchange.getResponse().beforeCommit(() -> {
+                if (sampled.compareAndSet(false, true)) {
+                    HttpStatusCode status = exchange.getResponse().getStatusCode();
+                    limiter.onSample(System.nanoTime() - start, status != null && status.is5xxServerError());
+                }
+                return Mono.empty();
+            });
+            return chain.filter(exchange).doFinally(signal -> {
+                // A client cancelling says nothing about backend health
+                if (signal != SignalType.CANCEL && sampled.compareAndSet(false, true)) {
+                    limiter.onSample(System.nanoTime() - start, signal == SignalType.ON_ERROR);
+                }
+                limiter.release();
+            });
+        };
+    }
+
+    private Counter shedCounter(String route, String priority) {
+        return Counter.builder("gateway.concurrency.shed")
+                .description("Requests rejected with 503 by the adaptive concurrency limit")
+                .tag("route", route)
+                .tag("priority", priority)
+                .register(meterRegistry);
+    }
+
+    static final class Limiter {
+        private static final double BASELINE_SMOOTHING = 1.0 / 500;
+
+        private final Config config;
+        private final AtomicInteger inflight = new AtomicInteger();
+        private volatile double limit;
+        private double baselineRttNanos;
+        private long lastDecreaseNanos;
+
+        Limiter(Config config) {
+            this.config = config;
+            this.limit = Math.max(config.getMinLimit(), Math.min(config.getMaxLimit(), config.getInitialLimit()));
+            this.lastDecreaseNanos = System.nanoTime();
+        }
+
+        double limit() { return limit; }
+
+        double inflight() { return inflight.get(); }
+
+        boolean tryAcquire(boolean write) {
+            double allowed = write ? limit : Math.max(1, limit * (1 - config.getWriteReserve()));
+            while (true) {
+                int current = inflight.get();
+                if (current >= allowed) {
+                    return false;
+                }
+                if (inflight.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            inflight.decrementAndGet();
+        }
+
+        synchronized void onSample(long rttNanos, boolean dropped) {
+            long now = System.nanoTime();
+            if (baselineRttNanos == 0) {
+                baselineRttNanos = rttNanos;
+            }
+            boolean slow = rttNanos > baselineRttNanos * config.getTolerance();
+            if (dropped || slow) {
+                // Back off at most once per baseline RTT so one slow burst isn't compounded
+                if (now - lastDecreaseNanos > baselineRttNanos) {
+                    limit = Math.max(config.getMinLimit(), limit * config.getBackoffRatio());
+                    lastDecreaseNanos = now;
+                }
+            } else if (inflight.get() >= limit / 2) {
+                // Only probe upwards when the current limit is actually being used
+                limit = Math.min(config.getMaxLimit(), limit + 1);
+            }
+            if (!dropped) {
+                baselineRttNanos += (rttNanos - baselineRttNanos) * BASELINE_SMOOTHING;
+            }
+        }
+    }
+
+    public static class Config implements HasRouteId {
+        private String routeId;
+        private int initialLimit = 20;
+        private int minLimit = 2;
+        private int maxLimit = 200;
+        private double tolerance = 2.0;      // latency above baseline * tolerance counts as overload
+        private double backoffRatio = 0.9;   // multiplicative decrease on overload
+        private double writeReserve = 0.2;   // share of the limit only writes may use
+
+        @Override
+        public void setRouteId(String routeId) { this.routeId = routeId; }
+        @Override
+        public String getRouteId() { return routeId; }
+
+        public int getInitialLimit() { return initialLimit; }
+        public void setInitialLimit(int initialLimit) { this.initialLimit = initialLimit; }
+        public int getMinLimit() { return minLimit; }
+        public void setMinLimit(int minLimit) { this.minLimit = minLimit; }
+        public int getMaxLimit() { return maxLimit; }
+        public void setMaxLimit(int maxLimit) { this.maxLimit = maxLimit; }
+        public double getTolerance() { return tolerance; }
+        public void setTolerance(double tolerance) { this.tolerance = tolerance; }
+        public double getBackoffRatio() { return backoffRatio; }
+        public void setBackoffRatio(double backoffRatio) { this.backoffRatio = backoffRatio; }
+        public double getWriteReserve() { return writeReserve; }
+        public void setWriteReserve(double writeReserve) { this.writeReserve = writeReserve; }
+    }
+}
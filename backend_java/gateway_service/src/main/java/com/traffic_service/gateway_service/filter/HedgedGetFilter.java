@@ -0,0 +1,224 @@
+package com.traffic_service.gateway_service.filter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.RouteToRequestUrlFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.HasRouteId;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter.filterRequest;
+import static org.springframework.cloud.gateway.support.RouteMetadataUtils.RESPONSE_TIMEOUT_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.isAlreadyRouted;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.setAlreadyRouted;
+
+/**
+ * Hedged GETs for latency-sensitive read routes: when the first attempt hasn't answered within
+ * the route's recent p95 (by default), a second identical request is sent and whichever returns
+ * first wins; the other is cancelled, which releases its pooled connection.
+ *
+ * Only GET and HEAD are hedged. Responses are buffered, so this is meant for small JSON reads,
+ * not streams. The filter routes the request itself (in place of NettyRoutingFilter) through the
+ * gateway's HttpClient, so the per-backend connection bulkheads still apply to both attempts.
+ * <pre>filters[n]=HedgedGetFilter=percentile</pre>
+ */
+@Component("HedgedGetFilter")
+public class HedgedGetFilter extends AbstractGatewayFilterFactory<HedgedGetFilter.Config> {
+
+    private final HttpClient httpClient;
+    private final ObjectProvider<List<HttpHeadersFilter>> headersFilters;
+    private final MeterRegistry meterRegistry;
+
+    public HedgedGetFilter(HttpClient httpClient,
+                           ObjectProvider<List<HttpHeadersFilter>> headersFilters,
+                           MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.httpClient = httpClient;
+        this.headersFilters = headersFilters;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return List.of("percentile");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        if (config.getPercentile() <= 0 || config.getPercentile() >= 1) {
+            throw new IllegalArgumentException("HedgedGetFilter needs 0 < percentile < 1");
+        }
+        String route = String.valueOf(config.getRouteId());
+        LatencyWindow latencies = new LatencyWindow(config.getWindowSize());
+        Counter requests = hedgeCounter("gateway.hedge.requests", "GETs routed through the hedging filter", route);
+        Counter attempts = hedgeCounter("gateway.hedge.attempts", "Second attempts fired after the hedge delay", route);
+        Counter wins = hedgeCounter("gateway.hedge.wins", "Requests answered by the hedged attempt", route);
+
+        // Runs after RouteToRequestUrlFilter has resolved the backend URL, before NettyRoutingFilter
+        return new OrderedGatewayFilter((exchange, chain) -> {
+            HttpMethod method = exchange.getRequest().getMethod();
+            URI url = exchange.getAttribute(GATEWAY_REQUEST_URL_ATTR);
+            if (isAlreadyRouted(exchange) || url == null
+                    || (!HttpMethod.GET.equals(method) && !HttpMethod.HEAD.equals(method))) {
+                return chain.filter(exchange);
+            }
+            setAlreadyRouted(exchange);
+            requests.increment();
+
+            HttpClient client = withResponseTimeout(exchange);
+            HttpHeaders headers = filterRequest(headersFilters.getIfAvailable(), exchange);
+            long start = System.nanoTime();
+            Mono<Attempt> primary = send(client, method, url, headers, false);
+
+            long delayNanos = latencies.percentile(config.getPercentile(), config.getMinSamples());
+            Mono<Attempt> response = primary;
+            if (delayNanos > 0) {
+                Duration delay = Duration.ofNanos(Math.max(delayNanos, config.getMinDelay().toNanos()));
+                Mono<Attempt> hedge = Mono.delay(delay)
+                        .doOnNext(tick -> attempts.increment())
+                        .then(send(client, method, url, headers, true));
+                response = Mono.firstWithValue(primary, hedge);
+            }
+
+            return response.flatMap(attempt -> {
+                latencies.record(System.nanoTime() - start);
+                if (attempt.hedged()) {
+                    wins.increment();
+                }
+                return write(exchange, attempt);
+            }).then(chain.filter(exchange));
+        }, RouteToRequestUrlFilter.ROUTE_TO_URL_FILTER_ORDER + 1);
+    }
+
+    private Mono<Attempt> send(HttpClient client, HttpMethod method, URI url, HttpHeaders headers, boolean hedged) {
+        return client
+                .headers(h -> headers.forEach(h::set))
+                .request(io.netty.handler.codec.http.HttpMethod.valueOf(method.name()))
+                .uri(url)
+                .responseSingle((res, body) -> body.asByteArray()
+                        .defaultIfEmpty(new byte[0])
+                        .map(bytes -> {
+                            HttpHeaders responseHeaders = new HttpHeaders();
+                            res.responseHeaders().forEach(e -> responseHeaders.add(e.getKey(), e.getValue()));
+                            return new Attempt(res.status().code(), responseHeaders, bytes, hedged);
+                        }));
+    }
+
+    // Same per-route timeout NettyRoutingFilter would apply, so the circuit breaker still sees it
+    private HttpClient withResponseTimeout(ServerWebExchange exchange) {
+        Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+        Object timeout = route != null ? route.getMetadata().get(RESPONSE_TIMEOUT_ATTR) : null;
+        if (timeout == null) {
+            return httpClient;
+        }
+        // Metadata binds from properties as strings, or as numbers when set in code
+        long millis = timeout instanceof Number number ? number.longValue() : Long.parseLong(timeout.toString());
+        return millis >= 0 ? httpClient.responseTimeout(Duration.ofMillis(millis)) : httpClient;
+    }
+
+    private Mono<Void> write(ServerWebExchange exchange, Attempt attempt) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatusCode.valueOf(attempt.status()));
+        HttpHeaders filtered = HttpHeadersFilter.filter(headersFilters.getIfAvailable(), attempt.headers(),
+                exchange, HttpHeadersFilter.Type.RESPONSE);
+        filtered.remove(HttpHeaders.TRANSFER_ENCODING);
+        // Keep headers earlier filters already set (rate limit, etc.)
+        filtered.forEach((name, values) -> response.getHeaders().put(name, values));
+        response.getHeaders().setContentLength(attempt.body().length);
+        if (HttpMethod.HEAD.equals(exchange.getRequest().getMethod())) {
+            return response.setComplete();
+        }
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(attempt.body())));
+    }
+
+    private Counter hedgeCounter(String name, String description, String route) {
+        return Counter.builder(name)
+                .description(description)
+                .tag("route", route)
+                .register(meterRegistry);
+    }
+
+    private record Attempt(int status, HttpHeaders headers, byte[] body, boolean hedged) {}
+
+    /**
+     * Ring buffer of recent end-to-end latencies. Writers race on a single index, which is fine:
+     * an occasionally overwritten sample doesn't move a percentile. The sorted view is rebuilt at
+     * most once per REFRESH_NANOS rather than per request.
+     */
+    static final class LatencyWindow {
+        private static final long REFRESH_NANOS = 1_000_000_000L;
+
+        private final long[] samples;
+        private final AtomicInteger count = new AtomicInteger();
+        private volatile long[] sorted = new long[0];
+        private volatile long sortedAt;
+
+        LatencyWindow(int size) {
+            this.samples = new long[size];
+        }
+
+        void record(long nanos) {
+            int n = count.getAndIncrement();
+            samples[Math.floorMod(n, samples.length)] = nanos;
+        }
+
+        /** Returns 0 until minSamples latencies have been seen, meaning "don't hedge yet". */
+        long percentile(double p, int minSamples) {
+            int n = Math.min(count.get(), samples.length);
+            if (n < minSamples) {
+                return 0;
+            }
+            long now = System.nanoTime();
+            long[] view = sorted;
+            if (view.length != n || now - sortedAt > REFRESH_NANOS) {
+                view = Arrays.copyOf(samples, n);
+                Arrays.sort(view);
+                sorted = view;
+                sortedAt = now;
+            }
+            return view[Math.min(n - 1, (int) (p * n))];
+        }
+    }
+
+    public static class Config implements HasRouteId {
+        private String routeId;
+        private double percentile = 0.95;              // hedge after this share of recent requests would have finished
+        private int minSamples = 100;                  // no hedging until this many latencies are known
+        private int windowSize = 1024;
+        private Duration minDelay = Duration.ofMillis(5);
+
+        @Override
+        public void setRouteId(String routeId) { this.routeId = routeId; }
+        @Override
+        public String getRouteId() { return routeId; }
+
+        public double getPercentile() { return percentile; }
+        public void setPercentile(double percentile) { this.percentile = percentile; }
+        public int getMinSamples() { return minSamples; }
+        public void setMinSamples(int minSamples) { this.minSamples = minSamples; }
+        public int getWindowSize() { return windowSize; }
+        public void setWindowSize(int windowSize) { this.windowSize = windowSize; }
+        public Duration getMinDelay() { return minDelay; }
+        public void setMinDelay(Duration minDelay) { this.minDelay = minDelay; }
+    }
+}
@@ -1,68 +1,145 @@
 package com.traffic_service.gateway_service.filter;
 
-import io.jsonwebtoken.Claims;
-import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.security.Keys;
-import org.springframework.beans.factory.annotation.Value;
+import com.traffic_service.gateway_service.security.JwtTokenVerifier;
+import com.traffic_service.gateway_service.security.JwtTokenVerifier.VerifiedToken;
+import io.jsonwebtoken.JwtException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.cloud.gateway.filter.GatewayFilter;
 import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.http.HttpCookie;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.stereotype.Component;
 import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
 
-import java.nio.charset.StandardCharsets;
-import java.security.Key;
+import java.util.List;
+import java.util.stream.Collectors;
 
+/**
+ * Verifies the caller's JWT and forwards its identity as X-Username, X-User-Id and X-Roles.
+ *
+ * The token comes from the Authorization header. A route that browsers open with EventSource,
+ * which can't set headers, may name a tokenParam: the token is then also taken from that query
+ * parameter or cookie, and removed from the request before it is forwarded.
+ * <pre>filters[n]=JwtAuthFilter=tokenParam</pre>
+ */
 @Component("JwtAuthFilter") // must match filter name in application.properties
 public class JwtAuthFilter extends AbstractGatewayFilterFactory<JwtAuthFilter.Config> {
 
-    @Value("${jwt.secret}")
-    private String secret;
+    private static final Logger log = LoggerFactory.getLogger(JwtAuthFilter.class);
 
-    public JwtAuthFilter() {
+    // Identity headers are only trusted when set here, never when sent by the client
+    public static final String USERNAME_HEADER = "X-Username";
+    public static final String USER_ID_HEADER = "X-User-Id";
+    public static final String ROLES_HEADER = "X-Roles";
+
+    private final JwtTokenVerifier verifier;
+
+    public JwtAuthFilter(JwtTokenVerifier verifier) {
         super(Config.class);
+        this.verifier = verifier;
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return List.of("tokenParam");
     }
 
     @Override
     public GatewayFilter apply(Config config) {
         return (exchange, chain) -> {
             String path = exchange.getRequest().getURI().getPath();
-            System.out.println("🔹 Incoming path: " + path);
+            log.debug("Incoming path: {}", path);
 
             // ✅ Skip auth for open authentication endpoints (login, register, etc.)
             if (path.startsWith("/api/auth") || path.startsWith("/auth")) {
                 return chain.filter(exchange);
             }
 
-            // ✅ Validate JWT header
+            // ✅ Validate JWT header, or the route's token parameter when there is none
             String authHeader = exchange.getRequest().getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
-            if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+            String token = authHeader != null && authHeader.startsWith("Bearer ") ? authHeader.substring(7)
+                    : config.getTokenParam() != null ? tokenParam(exchange.getRequest(), config.getTokenParam())
+                    : null;
+            if (token == null) {
                 exchange.getResponse().setStatusCode(HttpStatus.UNAUTHORIZED);
                 return exchange.getResponse().setComplete();
             }
 
-            String token = authHeader.substring(7);
+            VerifiedToken verified;
             try {
-                Key key = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
-                Claims claims = Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token).getBody();
-
-                // ✅ Forward username header downstream
-                ServerWebExchange mutated = exchange.mutate()
-                        .request(r -> r.headers(h -> {
-                            h.set("X-Username", claims.getSubject());
-                            h.set(HttpHeaders.AUTHORIZATION, "Bearer " + token);
-                        }))
-                        .build();
-
-                return chain.filter(mutated);
-            } catch (Exception e) {
-                e.printStackTrace();
+                verified = verifier.verify(token);
+            } catch (JwtException | IllegalArgumentException e) {
+                log.debug("Rejected token for {}: {}", path, e.getMessage());
                 exchange.getResponse().setStatusCode(HttpStatus.FORBIDDEN);
                 return exchange.getResponse().setComplete();
             }
+
+            // ✅ Forward identity headers downstream, dropping any client-supplied copies
+            ServerHttpRequest request = config.getTokenParam() != null
+                    ? withoutTokenParam(exchange.getRequest(), config.getTokenParam(), token)
+                    : exchange.getRequest();
+            ServerWebExchange mutated = exchange.mutate()
+                    .request(request.mutate().headers(h -> {
+                        h.remove(USER_ID_HEADER);
+                        h.remove(ROLES_HEADER);
+                        h.set(USERNAME_HEADER, verified.subject());
+                        if (verified.userId() != null) {
+                            h.set(USER_ID_HEADER, verified.userId().toString());
+                        }
+                        if (!verified.roles().isEmpty()) {
+                            h.set(ROLES_HEADER, String.join(",", verified.roles()));
+                        }
+                    }).build())
+                    .build();
+
+            return chain.filter(mutated);
         };
     }
 
-    public static class Config {}
+    private static String tokenParam(ServerHttpRequest request, String name) {
+        String token = request.getQueryParams().getFirst(name);
+        if (token == null) {
+            HttpCookie cookie = request.getCookies().getFirst(name);
+            token = cookie != null ? cookie.getValue() : null;
+        }
+        return token == null || token.isEmpty() ? null : token;
+    }
+
+    // Keeps the token out of upstream URLs and access logs; downstream gets it as a header instead
+    private static ServerHttpRequest withoutTokenParam(ServerHttpRequest request, String name, String token) {
+        ServerHttpRequest.Builder builder = request.mutate();
+        if (request.getQueryParams().containsKey(name)) {
+            builder.uri(UriComponentsBuilder.fromUri(request.getURI()).replaceQueryParam(name).build(true).toUri());
+        }
+        if (request.getCookies().containsKey(name)) {
+            String cookies = request.getCookies().values().stream()
+                    .flatMap(List::stream)
+                    .filter(cookie -> !cookie.getName().equals(name))
+                    .map(HttpCookie::toString)
+                    .collect(Collectors.joining("; "));
+            builder.headers(h -> {
+                h.remove(HttpHeaders.COOKIE);
+                if (!cookies.isEmpty()) {
+                    h.set(HttpHeaders.COOKIE, cookies);
+                }
+            });
+        }
+        return builder.headers(h -> h.setBearerAuth(token)).build();
+    }
+
+    public static class Config {
+        private String tokenParam;
+
+        public String getTokenParam() {
+            return tokenParam;
+        }
+
+        public void setTokenParam(String tokenParam) {
+            this.tokenParam = tokenParam;
+        }
+    }
 }
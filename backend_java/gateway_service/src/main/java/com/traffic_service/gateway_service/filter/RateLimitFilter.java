@@ -0,0 +1,121 @@
+package com.traffic_service.gateway_service.filter;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.support.HasRouteId;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-route token bucket keyed by the authenticated user (X-Username set by JwtAuthFilter),
+ * falling back to the client address on routes without JWT validation.
+ *
+ * Each bucket is a single AtomicLong holding the GCRA "theoretical arrival time", updated with
+ * a CAS loop, so admission never takes a lock. Must be listed after JwtAuthFilter on a route:
+ * <pre>filters[n]=RateLimitFilter=replenishRate,burstCapacity</pre>
+ */
+@Component("RateLimitFilter")
+public class RateLimitFilter extends AbstractGatewayFilterFactory<RateLimitFilter.Config> {
+
+    public static final String REMAINING_HEADER = "X-RateLimit-Remaining";
+    public static final String REPLENISH_RATE_HEADER = "X-RateLimit-Replenish-Rate";
+    public static final String BURST_CAPACITY_HEADER = "X-RateLimit-Burst-Capacity";
+
+    private static final Duration IDLE_BUCKET_EXPIRY = Duration.ofMinutes(10);
+    private static final long MAX_BUCKETS_PER_ROUTE = 100_000;
+
+    private final MeterRegistry meterRegistry;
+
+    public RateLimitFilter(MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return List.of("replenishRate", "burstCapacity");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        if (config.getReplenishRate() <= 0 || config.getBurstCapacity() < 1) {
+            throw new IllegalArgumentException("RateLimitFilter needs replenishRate > 0 and burstCapacity >= 1");
+        }
+        long emissionIntervalNanos = TimeUnit.SECONDS.toNanos(1) / config.getReplenishRate();
+        long burstToleranceNanos = emissionIntervalNanos * config.getBurstCapacity();
+        // An idle bucket refills completely, so evicting it loses no state
+        Cache<String, AtomicLong> buckets = Caffeine.newBuilder()
+                .maximumSize(MAX_BUCKETS_PER_ROUTE)
+                .expireAfterAccess(IDLE_BUCKET_EXPIRY)
+                .build();
+        Counter rejected = Counter.builder("gateway.ratelimit.rejected")
+                .description("Requests rejected with 429 by the route's token buckets")
+                .tag("route", String.valueOf(config.getRouteId()))
+                .register(meterRegistry);
+
+        return (exchange, chain) -> {
+            AtomicLong tat = buckets.get(bucketKey(exchange.getRequest()), k -> new AtomicLong(Long.MIN_VALUE));
+            long now = System.nanoTime();
+            long current;
+            long next;
+            do {
+                current = tat.get();
+                next = Math.max(current, now) + emissionIntervalNanos;
+                if (next - now > burstToleranceNanos) {
+                    rejected.increment();
+                    long waitNanos = next - now - burstToleranceNanos;
+                    HttpHeaders headers = exchange.getResponse().getHeaders();
+                    headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999))));
+                    headers.set(REMAINING_HEADER, "0");
+                    headers.set(REPLENISH_RATE_HEADER, String.valueOf(config.getReplenishRate()));
+                    headers.set(BURST_CAPACITY_HEADER, String.valueOf(config.getBurstCapacity()));
+                    exchange.getResponse().setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+                    return exchange.getResponse().setComplete();
+                }
+            } while (!tat.compareAndSet(current, next));
+
+            HttpHeaders headers = exchange.getResponse().getHeaders();
+            headers.set(REMAINING_HEADER, String.valueOf((burstToleranceNanos - (next - now)) / emissionIntervalNanos));
+            headers.set(REPLENISH_RATE_HEADER, String.valueOf(config.getReplenishRate()));
+            headers.set(BURST_CAPACITY_HEADER, String.valueOf(config.getBurstCapacity()));
+            return chain.filter(exchange);
+        };
+    }
+
+    private static String bucketKey(ServerHttpRequest request) {
+        String username = request.getHeaders().getFirst(JwtAuthFilter.USERNAME_HEADER);
+        if (username != null) {
+            return "user:" + username;
+        }
+        InetSocketAddress remote = request.getRemoteAddress();
+        return "addr:" + (remote != null && remote.getAddress() != null ? remote.getAddress().getHostAddress() : "unknown");
+    }
+
+    public static class Config implements HasRouteId {
+        private String routeId;
+        private int replenishRate = 10;   // tokens per second
+        private int burstCapacity = 20;   // max requests admitted at once
+
+        @Override
+        public void setRouteId(String routeId) { this.routeId = routeId; }
+        @Override
+        public String getRouteId() { return routeId; }
+
+        public int getReplenishRate() { return replenishRate; }
+        public void setReplenishRate(int replenishRate) { this.replenishRate = replenishRate; }
+        public int getBurstCapacity() { return burstCapacity; }
+        public void setBurstCapacity(int burstCapacity) { this.burstCapacity = burstCapacity; }
+    }
+}
@@ -0,0 +1,187 @@
+package com.traffic_service.gateway_service.filter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.support.HasRouteId;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Collapses identical concurrent GETs on a route into one upstream call.
+ *
+ * The first request for a key (path + query, plus the user for scope=user) goes upstream as
+ * usual; requests arriving while it is in flight wait for its response and get a copy of it.
+ * Only successful JSON responses of up to maxBodySize are shared, since sharing means holding
+ * the whole body: if the leader fails, is cancelled or returns anything else (an export, a
+ * stream, a larger body, which is streamed through), the waiting requests each go upstream on
+ * their own.
+ * Followers keep the headers their own filters already set (rate limit, CORS) and take the
+ * rest from the leader's response.
+ *
+ * Use scope=shared only on routes whose GET responses don't depend on the caller.
+ * <pre>filters[n]=RequestCoalescingFilter=scope</pre>
+ */
+@Component("RequestCoalescingFilter")
+public class RequestCoalescingFilter extends AbstractGatewayFilterFactory<RequestCoalescingFilter.Config> {
+
+    private final MeterRegistry meterRegistry;
+
+    public RequestCoalescingFilter(MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return List.of("scope");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        String route = String.valueOf(config.getRouteId());
+        ConcurrentMap<String, CompletableFuture<Snapshot>> inflight = new ConcurrentHashMap<>();
+        Counter coalesced = Counter.builder("gateway.coalesce.joined")
+                .description("GETs answered from an identical in-flight request")
+                .tag("route", route)
+                .register(meterRegistry);
+        Counter fallbacks = Counter.builder("gateway.coalesce.fallback")
+                .description("Waiting GETs that went upstream because the shared request failed or its response was not shareable")
+                .tag("route", route)
+                .register(meterRegistry);
+
+        long maxBodyBytes = config.getMaxBodySize().toBytes();
+
+        return (exchange, chain) -> {
+            ServerHttpRequest request = exchange.getRequest();
+            if (!HttpMethod.GET.equals(request.getMethod())) {
+                return chain.filter(exchange);
+            }
+            String user = request.getHeaders().getFirst(JwtAuthFilter.USERNAME_HEADER);
+            if (config.getScope() == Scope.USER && user == null) {
+                return chain.filter(exchange);
+            }
+            String key = (config.getScope() == Scope.USER ? user : "") + '\n' + request.getURI().getRawPath()
+                    + (request.getURI().getRawQuery() != null ? "?" + request.getURI().getRawQuery() : "");
+
+            CompletableFuture<Snapshot> leader = new CompletableFuture<>();
+            CompletableFuture<Snapshot> existing = inflight.putIfAbsent(key, leader);
+            if (existing != null) {
+                // Don't let one impatient follower cancel the shared request
+                return Mono.fromFuture(existing, true)
+                        .map(Optional::of)
+                        .defaultIfEmpty(Optional.empty())
+                        .flatMap(snapshot -> {
+                            if (snapshot.isEmpty()) {
+                                fallbacks.increment();
+                                return chain.filter(exchange);
+                            }
+                            coalesced.increment();
+                            return write(exchange, snapshot.get());
+                        });
+            }
+
+            ResponseBodyCaptureFilter.onBody(exchange, new ResponseBodyCaptureFilter.BodyHandler() {
+                @Override
+                public boolean accepts(ServerHttpResponse response) {
+                    HttpStatusCode status = response.getStatusCode();
+                    MediaType contentType = response.getHeaders().getContentType();
+                    long length = response.getHeaders().getContentLength();
+                    // An unknown length (chunked) is read up to maxBodyBytes, see onOverflow
+                    if (status != null && status.is2xxSuccessful()
+                            && contentType != null && contentType.isCompatibleWith(MediaType.APPLICATION_JSON)
+                            && length <= maxBodyBytes) {
+                        return true;
+                    }
+                    // Nothing to share (errors, exports, large bodies): release the followers now
+                    // rather than after the whole body has gone out
+                    release();
+                    return false;
+                }
+
+                @Override
+                public long maxBytes() {
+                    return maxBodyBytes;
+                }
+
+                @Override
+                public void onOverflow(ServerHttpResponse response) {
+                    release();
+                }
+
+                private void release() {
+                    inflight.remove(key, leader);
+                    leader.complete(null);
+                }
+
+                @Override
+                public byte[] onBody(ServerHttpResponse response, byte[] body) {
+                    if (body.length > maxBodyBytes) {
+                        release();
+                        return body;
+                    }
+                    leader.complete(new Snapshot(response.getStatusCode(),
+                            HttpHeaders.readOnlyHttpHeaders(new HttpHeaders(response.getHeaders())), body));
+                    return body;
+                }
+            });
+            ResponseBodyCaptureFilter.afterResponse(exchange, () -> {
+                inflight.remove(key, leader);
+                // Empty result: followers make their own call
+                leader.complete(null);
+            });
+            return chain.filter(exchange);
+        };
+    }
+
+    private static Mono<Void> write(ServerWebExchange exchange, Snapshot snapshot) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(snapshot.status());
+        HttpHeaders headers = response.getHeaders();
+        snapshot.headers().forEach((name, values) -> {
+            if (!headers.containsKey(name)) {
+                headers.put(name, values);
+            }
+        });
+        headers.setContentLength(snapshot.body().length);
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(snapshot.body())));
+    }
+
+    private record Snapshot(HttpStatusCode status, HttpHeaders headers, byte[] body) {}
+
+    public enum Scope {
+        USER,     // one shared call per user and URL
+        SHARED    // one shared call per URL, across users
+    }
+
+    public static class Config implements HasRouteId {
+        private String routeId;
+        private Scope scope = Scope.USER;
+        private DataSize maxBodySize = DataSize.ofMegabytes(1);   // larger responses are streamed, not shared
+
+        @Override
+        public void setRouteId(String routeId) { this.routeId = routeId; }
+        @Override
+        public String getRouteId() { return routeId; }
+
+        public Scope getScope() { return scope; }
+        public void setScope(Scope scope) { this.scope = scope; }
+        public DataSize getMaxBodySize() { return maxBodySize; }
+        public void setMaxBodySize(DataSize maxBodySize) { this.maxBodySize = maxBodySize; }
+    }
+}
@@ -0,0 +1,160 @@
+package com.traffic_service.gateway_service.filter;
+
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Lets route filters see and rewrite the complete downstream response body, and run code once
+ * the response has been written.
+ *
+ * NettyWriteResponseFilter runs ahead of every route filter and writes to the response it was
+ * given, so a route filter can't simply decorate the response itself. This filter decorates it
+ * once, just outside NettyWriteResponseFilter, and buffers only when a route filter registered a
+ * handler via {@link #onBody} that accepts the response, and only up to the handlers' limit;
+ * everything else (large exports, and every streaming write) passes through.
+ * Since this filter's chain includes the write, {@link #afterResponse} actions run after it.
+ */
+@Component
+public class ResponseBodyCaptureFilter implements GlobalFilter, Ordered {
+
+    static final int ORDER = NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1;
+
+    private static final String HANDLER_ATTR = ResponseBodyCaptureFilter.class.getName() + ".handler";
+    private static final String FINALLY_ATTR = ResponseBodyCaptureFilter.class.getName() + ".finally";
+
+    interface BodyHandler {
+        /**
+         * Called when the status and headers are known. Returning false leaves this handler out;
+         * if no handler wants the body it is streamed through without buffering.
+         */
+        default boolean accepts(ServerHttpResponse response) {
+            return true;
+        }
+
+        /**
+         * The largest body this handler wants. The body is read only up to the largest limit of
+         * the handlers that accepted it; beyond that it is streamed through, and handlers get
+         * {@link #onOverflow} instead of {@link #onBody}.
+         */
+        long maxBytes();
+
+        /** Called instead of {@link #onBody} when the body outgrew every handler's limit. */
+        default void onOverflow(ServerHttpResponse response) {
+        }
+
+        /** Called before the response is committed; returns the bytes to send. */
+        byte[] onBody(ServerHttpResponse response, byte[] body);
+    }
+
+    /**
+     * Registers a handler for this exchange's response body. Handlers registered later (closer
+     * to the backend) see the body first, so each filter gets what the next one returned.
+     */
+    static void onBody(ServerWebExchange exchange, BodyHandler handler) {
+        List<BodyHandler> handlers = exchange.getAttribute(HANDLER_ATTR);
+        if (handlers == null) {
+            handlers = new ArrayList<>(2);
+            exchange.getAttributes().put(HANDLER_ATTR, handlers);
+        }
+        handlers.add(0, handler);
+    }
+
+    /**
+     * Runs the action once the response has been written (or the exchange failed or was
+     * cancelled). A route filter's own doFinally fires earlier, before the body is written.
+     */
+    static void afterResponse(ServerWebExchange exchange, Runnable action) {
+        Runnable previous = exchange.getAttribute(FINALLY_ATTR);
+        Runnable combined = previous == null ? action : () -> {
+            try {
+                action.run();
+            } finally {
+                previous.run();
+            }
+        };
+        exchange.getAttributes().put(FINALLY_ATTR, combined);
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        ServerHttpResponse decorated = new ServerHttpResponseDecorator(exchange.getResponse()) {
+            @Override
+            public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+                List<BodyHandler> handlers = exchange.getAttribute(HANDLER_ATTR);
+                List<BodyHandler> accepted = handlers == null ? List.of()
+                        : handlers.stream().filter(handler -> handler.accepts(getDelegate())).toList();
+                if (accepted.isEmpty()) {
+                    return super.writeWith(body);
+                }
+                long maxBytes = accepted.stream().mapToLong(BodyHandler::maxBytes).max().orElseThrow();
+                long[] read = new long[1];
+                // The first batch is either the whole body or, once it grows past maxBytes, what
+                // was read so far; in that case every later buffer follows in a batch of its own
+                return Flux.<DataBuffer>from(body)
+                        .bufferUntil(buffer -> (read[0] += buffer.readableByteCount()) > maxBytes)
+                        .switchOnFirst((first, batches) -> {
+                            if (read[0] > maxBytes) {
+                                accepted.forEach(handler -> handler.onOverflow(getDelegate()));
+                            }
+                            if (read[0] > maxBytes || first.isOnError()) {
+                                return super.writeWith(batches.flatMapIterable(Function.identity()));
+                            }
+                            List<DataBuffer> buffers = first.hasValue() ? first.get() : List.of();
+                            return capture(accepted, buffers);
+                        })
+                        .then();
+            }
+
+            private Mono<Void> capture(List<BodyHandler> accepted, List<DataBuffer> buffers) {
+                byte[] bytes = new byte[(int) buffers.stream().mapToLong(DataBuffer::readableByteCount).sum()];
+                int offset = 0;
+                for (DataBuffer buffer : buffers) {
+                    int length = buffer.readableByteCount();
+                    buffer.read(bytes, offset, length);
+                    offset += length;
+                    DataBufferUtils.release(buffer);
+                }
+                ServerHttpResponse response = getDelegate();
+                byte[] out = bytes;
+                for (BodyHandler handler : accepted) {
+                    out = handler.onBody(response, out);
+                }
+                // The body may have arrived chunked; it now goes out in one piece of known length
+                response.getHeaders().remove(HttpHeaders.TRANSFER_ENCODING);
+                response.getHeaders().setContentLength(out.length);
+                if (out.length == 0) {
+                    return response.setComplete();
+                }
+                return response.writeWith(Mono.just(response.bufferFactory().wrap(out)));
+            }
+        };
+        return chain.filter(exchange.mutate().response(decorated).build())
+                .doFinally(signal -> {
+                    Runnable action = exchange.getAttribute(FINALLY_ATTR);
+                    if (action != null) {
+                        action.run();
+                    }
+                });
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+}
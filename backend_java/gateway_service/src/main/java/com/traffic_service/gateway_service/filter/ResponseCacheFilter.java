@@ -0,0 +1,239 @@
+package com.traffic_service.gateway_service.filter;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.support.HasRouteId;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Short-lived per-user cache of JSON GET responses with strong ETags, for dashboard polling.
+ *
+ * Entries are keyed by user, path and query, and expire after the route's TTL. Every response
+ * (hit or miss) carries an ETag and "Cache-Control: private, no-cache", so browsers revalidate
+ * with If-None-Match and get an empty 304 while the content is unchanged. A hit carries the
+ * headers the backend sent with the cached body (X-Next-Cursor and the like), but not those that
+ * earlier filters set on this response or that only describe the connection.
+ *
+ * A POST, PUT or DELETE from a user on the route bumps that user's generation number, which is
+ * part of the cache key: older entries become unreachable at once and age out on their own, and
+ * a GET that was already in flight when the write arrived will not store its (possibly stale)
+ * result. Must be listed after JwtAuthFilter; requests without X-Username are never cached.
+ * <pre>filters[n]=ResponseCacheFilter=ttl,maxEntries</pre>
+ */
+@Component("ResponseCacheFilter")
+public class ResponseCacheFilter extends AbstractGatewayFilterFactory<ResponseCacheFilter.Config> {
+
+    public static final String CACHE_STATUS_HEADER = "X-Cache";
+
+    private static final String CACHE_CONTROL = "private, no-cache";
+
+    // Set again for every response, or not to be repeated from another one
+    private static final Set<String> NOT_REPLAYED = caseInsensitive(List.of(
+            HttpHeaders.CONNECTION, "Keep-Alive", HttpHeaders.TRANSFER_ENCODING, HttpHeaders.CONTENT_LENGTH,
+            HttpHeaders.DATE, HttpHeaders.SET_COOKIE, HttpHeaders.ETAG, HttpHeaders.CACHE_CONTROL, CACHE_STATUS_HEADER));
+
+    private final MeterRegistry meterRegistry;
+
+    public ResponseCacheFilter(MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return List.of("ttl", "maxEntries");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        if (config.getTtl().isNegative() || config.getTtl().isZero() || config.getMaxEntries() < 1) {
+            throw new IllegalArgumentException("ResponseCacheFilter needs ttl > 0 and maxEntries >= 1");
+        }
+        String route = String.valueOf(config.getRouteId());
+        Cache<String, Entry> cache = Caffeine.newBuilder()
+                .maximumSize(config.getMaxEntries())
+                .expireAfterWrite(config.getTtl())
+                .recordStats()
+                .build();
+        // A user's generation may be forgotten once all entries written under it have expired;
+        // new ones start from the clock so they never reuse a number still present in a key
+        Cache<String, AtomicLong> generations = Caffeine.newBuilder()
+                .expireAfterAccess(config.getTtl().multipliedBy(2))
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "gateway.response", "route", route);
+        Counter notModified = Counter.builder("gateway.response.not-modified")
+                .description("Conditional GETs answered with 304")
+                .tag("route", route)
+                .register(meterRegistry);
+        long maxBodyBytes = config.getMaxBodySize().toBytes();
+
+        return (exchange, chain) -> {
+            ServerHttpRequest request = exchange.getRequest();
+            String user = request.getHeaders().getFirst(JwtAuthFilter.USERNAME_HEADER);
+            if (user == null) {
+                return chain.filter(exchange);
+            }
+            AtomicLong generation = generations.get(user, k -> new AtomicLong(System.nanoTime()));
+
+            if (!HttpMethod.GET.equals(request.getMethod())) {
+                // Invalidate before (for GETs racing the write) and after (for GETs issued meanwhile)
+                generation.incrementAndGet();
+                return chain.filter(exchange).doFinally(signal -> generation.incrementAndGet());
+            }
+
+            long observed = generation.get();
+            String key = user + '\n' + observed + '\n' + request.getURI().getRawPath()
+                    + (request.getURI().getRawQuery() != null ? "?" + request.getURI().getRawQuery() : "");
+            String ifNoneMatch = request.getHeaders().getFirst(HttpHeaders.IF_NONE_MATCH);
+
+            Entry cached = cache.getIfPresent(key);
+            if (cached != null) {
+                return respond(exchange, cached, ifNoneMatch, notModified);
+            }
+
+            // Whatever is set on the response by now came from earlier filters, not from the backend
+            Set<String> preset = caseInsensitive(exchange.getResponse().getHeaders().keySet());
+            ResponseBodyCaptureFilter.onBody(exchange, new ResponseBodyCaptureFilter.BodyHandler() {
+                @Override
+                public boolean accepts(ServerHttpResponse response) {
+                    MediaType contentType = response.getHeaders().getContentType();
+                    // Unknown (-1) for chunked responses, which are read up to maxBytes() and passed
+                    // through uncached once they outgrow it
+                    return response.getStatusCode() == HttpStatus.OK
+                            && contentType != null && contentType.isCompatibleWith(MediaType.APPLICATION_JSON)
+                            && response.getHeaders().getContentLength() <= maxBodyBytes;
+                }
+
+                @Override
+                public long maxBytes() {
+                    return maxBodyBytes;
+                }
+
+                @Override
+                public byte[] onBody(ServerHttpResponse response, byte[] body) {
+                    return body.length > maxBodyBytes ? body : store(response, body);
+                }
+
+                private byte[] store(ServerHttpResponse response, byte[] body) {
+                    HttpHeaders backend = new HttpHeaders();
+                    response.getHeaders().forEach((name, values) -> {
+                        if (!NOT_REPLAYED.contains(name) && !preset.contains(name)) {
+                            backend.put(name, values);
+                        }
+                    });
+                    Entry entry = new Entry(HttpHeaders.readOnlyHttpHeaders(backend), etag(body), body);
+                    if (generation.get() == observed) {
+                        cache.put(key, entry);
+                    }
+                    HttpHeaders headers = response.getHeaders();
+                    headers.setETag(entry.etag());
+                    headers.setCacheControl(CACHE_CONTROL);
+                    headers.set(CACHE_STATUS_HEADER, "MISS");
+                    if (matches(ifNoneMatch, entry.etag())) {
+                        notModified.increment();
+                        response.setStatusCode(HttpStatus.NOT_MODIFIED);
+                        headers.remove(HttpHeaders.CONTENT_TYPE);
+                        return new byte[0];
+                    }
+                    return body;
+                }
+            });
+            return chain.filter(exchange);
+        };
+    }
+
+    private static Mono<Void> respond(ServerWebExchange exchange, Entry entry, String ifNoneMatch, Counter notModified) {
+        ServerHttpResponse response = exchange.getResponse();
+        HttpHeaders headers = response.getHeaders();
+        headers.setETag(entry.etag());
+        headers.setCacheControl(CACHE_CONTROL);
+        headers.set(CACHE_STATUS_HEADER, "HIT");
+        entry.headers().forEach(headers::putIfAbsent);
+        if (matches(ifNoneMatch, entry.etag())) {
+            notModified.increment();
+            response.setStatusCode(HttpStatus.NOT_MODIFIED);
+            headers.remove(HttpHeaders.CONTENT_TYPE);
+            return response.setComplete();
+        }
+        response.setStatusCode(HttpStatus.OK);
+        headers.setContentLength(entry.body().length);
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(entry.body())));
+    }
+
+    // If-None-Match uses weak comparison and may list several tags
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String etag(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            return '"' + Base64.getUrlEncoder().withoutPadding().encodeToString(digest) + '"';
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static Set<String> caseInsensitive(Iterable<String> names) {
+        Set<String> set = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        names.forEach(set::add);
+        return set;
+    }
+
+    /** A cached body, with the headers the backend sent alongside it. */
+    private record Entry(HttpHeaders headers, String etag, byte[] body) {}
+
+    public static class Config implements HasRouteId {
+        private String routeId;
+        private Duration ttl = Duration.ofSeconds(5);
+        private long maxEntries = 10_000;
+        private DataSize maxBodySize = DataSize.ofMegabytes(1);   // larger responses are passed through uncached
+
+        @Override
+        public void setRouteId(String routeId) { this.routeId = routeId; }
+        @Override
+        public String getRouteId() { return routeId; }
+
+        public Duration getTtl() { return ttl; }
+        public void setTtl(Duration ttl) { this.ttl = ttl; }
+        public long getMaxEntries() { return maxEntries; }
+        public void setMaxEntries(long maxEntries) { this.maxEntries = maxEntries; }
+        public DataSize getMaxBodySize() { return maxBodySize; }
+        public void setMaxBodySize(DataSize maxBodySize) { this.maxBodySize = maxBodySize; }
+    }
+}
@@ -0,0 +1,81 @@
+package com.traffic_service.gateway_service.filter;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.util.AttributeKey;
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.Connection;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * Records the size of each routed response body as the gateway hands it to the server, i.e.
+ * before compression, in gateway.response.body.bytes{route}.
+ *
+ * It also tags the connection with the route id, so the Netty handler in CompressionMetricsConfig
+ * can file the bytes that actually went out on the wire under the same route.
+ */
+@Component
+public class ResponseSizeMetricsFilter implements GlobalFilter, Ordered {
+
+    public static final AttributeKey<String> ROUTE_ID = AttributeKey.valueOf("gateway.routeId");
+
+    private final MeterRegistry meterRegistry;
+
+    public ResponseSizeMetricsFilter(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+        if (route == null) {
+            return chain.filter(exchange);
+        }
+        if (ServerHttpRequestDecorator.getNativeRequest(exchange.getRequest()) instanceof Connection connection) {
+            connection.channel().attr(ROUTE_ID).set(route.getId());
+        }
+
+        AtomicLong bytes = new AtomicLong();
+        ServerHttpResponse counting = new ServerHttpResponseDecorator(exchange.getResponse()) {
+            @Override
+            public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+                return super.writeWith(Flux.from(body).doOnNext(buffer -> bytes.addAndGet(buffer.readableByteCount())));
+            }
+
+            @Override
+            public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+                return super.writeAndFlushWith(Flux.from(body).map(chunk ->
+                        Flux.from(chunk).doOnNext(buffer -> bytes.addAndGet(buffer.readableByteCount()))));
+            }
+        };
+        return chain.filter(exchange.mutate().response(counting).build())
+                .doFinally(signal -> DistributionSummary.builder("gateway.response.body.bytes")
+                        .description("Response body size before compression")
+                        .baseUnit("bytes")
+                        .tag("route", route.getId())
+                        .publishPercentileHistogram()
+                        .register(meterRegistry)
+                        .record(bytes.get()));
+    }
+
+    // Outside ResponseBodyCaptureFilter, so it counts what is finally sent rather than what the backend sent
+    @Override
+    public int getOrder() {
+        return ResponseBodyCaptureFilter.ORDER - 1;
+    }
+}
@@ -0,0 +1,109 @@
+package com.traffic_service.gateway_service.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Verifies bearer tokens with a signing key and parser built once at startup.
+ *
+ * Successfully verified tokens are cached by SHA-256 digest until their exp claim, so repeat
+ * requests from the same session skip signature checks and claim parsing on the event loop.
+ * Cache hit rate is published as the "gateway.jwt.verified" cache and full verifications as
+ * the "gateway.jwt.verification" timer.
+ */
+@Component
+public class JwtTokenVerifier {
+
+    public record VerifiedToken(String subject, Long userId, List<String> roles, Instant expiresAt) {}
+
+    private final JwtParser parser;
+    private final Cache<String, VerifiedToken> verified;
+    private final Timer verificationTimer;
+
+    public JwtTokenVerifier(
+            @Value("${jwt.secret}") String secret,
+            @Value("${jwt.verified-cache.max-size:10000}") long maxSize,
+            MeterRegistry meterRegistry) {
+        this.parser = Jwts.parserBuilder()
+                .setSigningKey(Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8)))
+                .build();
+        this.verified = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(Expiry.creating((String digest, VerifiedToken token) ->
+                        Duration.between(Instant.now(), token.expiresAt())))
+                .recordStats()
+                .build();
+        this.verificationTimer = Timer.builder("gateway.jwt.verification")
+                .description("Time spent on full JWT signature verification and parsing")
+                .register(meterRegistry);
+        CaffeineCacheMetrics.monitor(meterRegistry, verified, "gateway.jwt.verified");
+    }
+
+    /**
+     * Returns the claims the gateway forwards downstream.
+     *
+     * @throws JwtException if the token is malformed, expired or has an invalid signature
+     */
+    public VerifiedToken verify(String token) {
+        String digest = digest(token);
+        VerifiedToken cached = verified.getIfPresent(digest);
+        if (cached != null && cached.expiresAt().isAfter(Instant.now())) {
+            return cached;
+        }
+
+        long start = System.nanoTime();
+        Claims claims;
+        try {
+            claims = parser.parseClaimsJws(token).getBody();
+        } finally {
+            verificationTimer.record(Duration.ofNanos(System.nanoTime() - start));
+        }
+
+        VerifiedToken result = new VerifiedToken(
+                claims.getSubject(),
+                claims.get("uid") != null ? Long.valueOf(claims.get("uid").toString()) : null,
+                claims.get("roles") instanceof Collection<?> roles
+                        ? roles.stream().map(Object::toString).toList()
+                        : List.of(),
+                expiresAt(claims.getExpiration()));
+        // Tokens without an exp claim are accepted but never cached
+        if (claims.getExpiration() != null) {
+            verified.put(digest, result);
+        }
+        return result;
+    }
+
+    private static Instant expiresAt(Date expiration) {
+        return expiration != null ? expiration.toInstant() : Instant.MAX;
+    }
+
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -1,9 +1,14 @@
 package com.priacc.power;
 
+import com.priacc.common.security.UserIdResolver;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Import;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@Import(UserIdResolver.class)
+@EnableScheduling
 public class SensorServiceApplication {
     public static void main(String[] args) {
         SpringApplication.run(SensorServiceApplication.class, args);
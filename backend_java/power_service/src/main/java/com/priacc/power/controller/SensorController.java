@@ -1,25 +1,59 @@
 package com.priacc.power.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.data.domain.Window;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.beans.factory.annotation.Autowired;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import com.priacc.common.security.UserIdResolver;
+import com.priacc.common.web.ExportWriter;
 import com.priacc.power.model.Sensor;
+import com.priacc.power.model.SensorRollup;
+import com.priacc.power.service.SensorReadingService;
+import com.priacc.power.service.SensorRollupService;
 import com.priacc.power.service.SensorService;
 
 @RestController
 @RequestMapping("/sensors")
 public class SensorController {
 
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private static final List<ExportWriter.Column<Sensor>> EXPORT_COLUMNS = List.of(
+        new ExportWriter.Column<>("id", Sensor::getId),
+        new ExportWriter.Column<>("type", Sensor::getType),
+        new ExportWriter.Column<>("value", Sensor::getValue),
+        new ExportWriter.Column<>("status", Sensor::getStatus),
+        new ExportWriter.Column<>("lastUpdated", Sensor::getLastUpdated),
+        new ExportWriter.Column<>("userId", Sensor::getUserId)
+    );
+
     private final SensorService service;
+    private final SensorReadingService readingService;
+    private final SensorRollupService rollupService;
+    private final ObjectMapper objectMapper;
     
     @Autowired
-    private RestTemplate restTemplate;
+    private UserIdResolver userIdResolver;
     
-    public SensorController(SensorService service) { this.service = service; }
+    public SensorController(SensorService service, SensorReadingService readingService,
+                            SensorRollupService rollupService, ObjectMapper objectMapper) {
+        this.service = service;
+        this.readingService = readingService;
+        this.rollupService = rollupService;
+        this.objectMapper = objectMapper;
+    }
 
     // ✅ Test endpoint
     @GetMapping
@@ -30,9 +64,10 @@ public class SensorController {
     @PostMapping
     public ResponseEntity<Sensor> create(
             @RequestHeader(value = "X-Username", required = false) String username,
+            @RequestHeader(value = "X-User-Id", required = false) Long userIdHeader,
             @RequestBody Sensor dto) {
 
-        Long userId = resolveUserId(username);
+        Long userId = userIdResolver.resolve(userIdHeader, username);
         if (userId == null) {
             return ResponseEntity.status(401).build();
         }
@@ -43,39 +78,143 @@ public class SensorController {
         return ResponseEntity.created(URI.create("/api/sensors/" + created.getId())).body(created);
     }
 
-    @GetMapping("/list")
-    public ResponseEntity<List<Sensor>> list(@RequestHeader(value = "X-Username", required = false) String username) {
-        if (username == null) {
-            System.err.println("X-Username header missing");
+    /**
+     * Takes a JSON array or NDJSON of {sensorId, value, timestamp} readings for any number of the
+     * user's sensors. They are buffered and written in batches, so the answer is 202 with how many
+     * were accepted and how many rejected (unknown sensors or other users' sensors).
+     */
+    @PostMapping(value = "/readings", consumes = {MediaType.APPLICATION_JSON_VALUE, "application/x-ndjson"})
+    public ResponseEntity<?> ingestReadings(
+            @RequestHeader(value = "X-Username", required = false) String username,
+            @RequestHeader(value = "X-User-Id", required = false) Long userIdHeader,
+            InputStream body) throws IOException {
+        Long userId = userIdResolver.resolve(userIdHeader, username);
+        if (userId == null) {
             return ResponseEntity.status(401).build();
         }
 
-        Long userId = resolveUserId(username);
+        try {
+            return ResponseEntity.accepted().body(readingService.ingest(userId, body));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        }
+    }
+
+    /**
+     * A sensor's recorded readings in [from, to), oldest first. The range defaults to the last 24
+     * hours before to (default now); 404 unless the sensor is the user's.
+     */
+    @GetMapping("/{id}/readings")
+    public ResponseEntity<?> readings(
+            @RequestHeader(value = "X-Username", required = false) String username,
+            @RequestHeader(value = "X-User-Id", required = false) Long userIdHeader,
+            @PathVariable Long id,
+            @RequestParam(required = false) Instant from,
+            @RequestParam(required = false) Instant to,
+            @RequestParam(defaultValue = "" + SensorReadingService.DEFAULT_HISTORY_LIMIT) int limit) {
+        Long userId = userIdResolver.resolve(userIdHeader, username);
         if (userId == null) {
-             return ResponseEntity.status(401).build();
+            return ResponseEntity.status(401).build();
         }
 
-        return ResponseEntity.ok(service.list(userId));
+        Instant end = to != null ? to : Instant.now();
+        Instant start = from != null ? from : end.minus(Duration.ofDays(1));
+        try {
+            return readingService.history(userId, id, start, end, limit)
+                    .<ResponseEntity<?>>map(ResponseEntity::ok)
+                    .orElse(ResponseEntity.notFound().build());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        }
     }
 
-    private Long resolveUserId(String username) {
-        if (username == null) {
-            System.err.println("X-Username header missing");
-            return null;
+    /**
+     * Count, mean, min and max of readings over the window before to (default now), overall and per
+     * bucket, for one of the user's sensors (sensorId) or all their sensors of a type. The
+     * resolution (minute, hour or day) defaults to the finest giving at most 1440 buckets.
+     */
+    @GetMapping("/aggregates")
+    public ResponseEntity<?> aggregates(
+            @RequestHeader(value = "X-Username", required = false) String username,
+            @RequestHeader(value = "X-User-Id", required = false) Long userIdHeader,
+            @RequestParam(required = false) Long sensorId,
+            @RequestParam(required = false) String type,
+            @RequestParam(defaultValue = "1h") String window,
+            @RequestParam(required = false) Instant to,
+            @RequestParam(required = false) String resolution) {
+        Long userId = userIdResolver.resolve(userIdHeader, username);
+        if (userId == null) {
+            return ResponseEntity.status(401).build();
         }
 
         try {
-            ResponseEntity<Map> response = restTemplate.getForEntity(
-                    "http://auth-service:8090/auth/user-id?username=" + username,
-                    Map.class
-            );
-            if (response.getBody() != null && response.getBody().containsKey("userId")) {
-                return Long.valueOf(response.getBody().get("userId").toString());
+            if ((sensorId == null) == (type == null)) {
+                throw new IllegalArgumentException("Exactly one of sensorId and type is required");
+            }
+            Duration length = DurationStyle.detectAndParse(window);
+            if (length.isNegative() || length.isZero()) {
+                throw new IllegalArgumentException("window must be positive");
+            }
+            SensorRollup.Resolution bucket = SensorRollupService.resolutionFor(length);
+            if (resolution != null) {
+                try {
+                    bucket = SensorRollup.Resolution.valueOf(resolution.toUpperCase(Locale.ROOT));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("resolution must be minute, hour or day");
+                }
             }
-        } catch (Exception e) {
-            System.err.println("Failed to get userId from auth service: " + e.getMessage());
+            Instant end = to != null ? to : Instant.now();
+            if (sensorId != null) {
+                return rollupService.sensor(userId, sensorId, end.minus(length), end, bucket)
+                        .<ResponseEntity<?>>map(ResponseEntity::ok)
+                        .orElse(ResponseEntity.notFound().build());
+            }
+            return ResponseEntity.ok(rollupService.type(userId, type, end.minus(length), end, bucket));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/list")
+    public ResponseEntity<List<Sensor>> list(
+            @RequestHeader(value = "X-Username", required = false) String username,
+            @RequestHeader(value = "X-User-Id", required = false) Long userIdHeader,
+            @RequestParam(required = false) String type,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) Instant from,
+            @RequestParam(required = false) Instant to,
+            @RequestParam(required = false) Long cursor,
+            @RequestParam(defaultValue = "" + SensorService.DEFAULT_PAGE_SIZE) int limit) {
+        Long userId = userIdResolver.resolve(userIdHeader, username);
+        if (userId == null) {
+            return ResponseEntity.status(401).build();
+        }
+
+        Window<Sensor> page = service.list(userId, type, status, from, to, cursor, limit);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.hasNext()) {
+            response.header(NEXT_CURSOR_HEADER, String.valueOf(page.getContent().get(page.size() - 1).getId()));
         }
-        return null;
+        return response.body(page.getContent());
+    }
+
+    /** All of the user's sensors, oldest first, streamed as NDJSON (default) or CSV. */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(
+            @RequestHeader(value = "X-Username", required = false) String username,
+            @RequestHeader(value = "X-User-Id", required = false) Long userIdHeader,
+            @RequestParam(defaultValue = "ndjson") String format) {
+        Long userId = userIdResolver.resolve(userIdHeader, username);
+        if (userId == null) {
+            return ResponseEntity.status(401).build();
+        }
+        ExportWriter.Format exportFormat = ExportWriter.Format.parse(format);
+        if (exportFormat == null) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        return ExportWriter.response(exportFormat, "sensors", objectMapper, EXPORT_COLUMNS,
+                sink -> service.export(userId, sink));
     }
 
     @GetMapping("/{id}")
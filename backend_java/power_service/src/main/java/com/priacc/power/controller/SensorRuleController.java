@@ -0,0 +1,68 @@
+package com.priacc.power.controller;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import com.priacc.common.security.UserIdResolver;
+import com.priacc.power.model.SensorRule;
+import com.priacc.power.service.SensorRuleEngine;
+
+/**
+ * The user's alert rules for their sensors, by sensor type. Readings breaking a rule raise an alert
+ * in alert-service (see SensorRuleEngine).
+ */
+@RestController
+@RequestMapping("/sensors/rules")
+public class SensorRuleController {
+
+    private final SensorRuleEngine ruleEngine;
+    private final UserIdResolver userIdResolver;
+
+    public SensorRuleController(SensorRuleEngine ruleEngine, UserIdResolver userIdResolver) {
+        this.ruleEngine = ruleEngine;
+        this.userIdResolver = userIdResolver;
+    }
+
+    @GetMapping
+    public ResponseEntity<List<SensorRule>> list(
+            @RequestHeader(value = "X-Username", required = false) String username,
+            @RequestHeader(value = "X-User-Id", required = false) Long userIdHeader) {
+        Long userId = userIdResolver.resolve(userIdHeader, username);
+        if (userId == null) {
+            return ResponseEntity.status(401).build();
+        }
+        return ResponseEntity.ok(ruleEngine.rules(userId));
+    }
+
+    @PostMapping
+    public ResponseEntity<?> create(
+            @RequestHeader(value = "X-Username", required = false) String username,
+            @RequestHeader(value = "X-User-Id", required = false) Long userIdHeader,
+            @RequestBody SensorRule dto) {
+        Long userId = userIdResolver.resolve(userIdHeader, username);
+        if (userId == null) {
+            return ResponseEntity.status(401).build();
+        }
+
+        try {
+            SensorRule created = ruleEngine.create(userId, dto);
+            return ResponseEntity.created(URI.create("/api/sensors/rules/" + created.getId())).body(created);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        }
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> delete(
+            @RequestHeader(value = "X-Username", required = false) String username,
+            @RequestHeader(value = "X-User-Id", required = false) Long userIdHeader,
+            @PathVariable Long id) {
+        Long userId = userIdResolver.resolve(userIdHeader, username);
+        if (userId == null) {
+            return ResponseEntity.status(401).build();
+        }
+        return ruleEngine.delete(userId, id) ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+    }
+}
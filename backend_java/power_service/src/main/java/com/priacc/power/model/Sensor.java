@@ -4,7 +4,7 @@ import jakarta.persistence.*;
 import java.time.Instant;
 
 @Entity
-@Table(name = "sensors")
+@Table(name = "sensors", indexes = @Index(name = "idx_sensors_user_id_id", columnList = "user_id, id"))
 public class Sensor {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -0,0 +1,31 @@
+package com.priacc.power.model;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+
+/** One reading of a sensor. Append-only: rows are bulk-loaded by SensorReadingWriter and never updated. */
+@Entity
+@Table(name = "sensor_readings", indexes = @Index(name = "idx_sensor_readings_sensor_id_recorded_at", columnList = "sensor_id, recorded_at"))
+public class SensorReading {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "sensor_id")
+    private Long sensorId;
+
+    @Column(name = "recorded_at")
+    private Instant recordedAt;
+
+    private Double value;
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getSensorId() { return this.sensorId; }
+    public void setSensorId(Long sensorId) { this.sensorId = sensorId; }
+    public Instant getRecordedAt() { return this.recordedAt; }
+    public void setRecordedAt(Instant recordedAt) { this.recordedAt = recordedAt; }
+    public Double getValue() { return this.value; }
+    public void setValue(Double value) { this.value = value; }
+}
@@ -0,0 +1,47 @@
+package com.priacc.power.model;
+
+import jakarta.persistence.*;
+import java.io.Serializable;
+import java.time.Instant;
+
+/**
+ * A sensor's readings in one time window, Gorilla-encoded into {@code data} by SensorChunkCodec.
+ * Written by SensorReadingCompactor once the window has closed; never loaded through JPA.
+ */
+@Entity
+@Table(name = "sensor_reading_chunks")
+@IdClass(SensorReadingChunk.Key.class)
+public class SensorReadingChunk {
+    @Id
+    @Column(name = "sensor_id")
+    private Long sensorId;
+
+    @Id
+    @Column(name = "window_start")
+    private Instant windowStart;
+
+    @Column(name = "first_at")
+    private Instant firstAt;
+
+    @Column(name = "last_at")
+    private Instant lastAt;
+
+    private Integer points;
+
+    private byte[] data;
+
+    public record Key(Long sensorId, Instant windowStart) implements Serializable {}
+
+    public Long getSensorId() { return this.sensorId; }
+    public void setSensorId(Long sensorId) { this.sensorId = sensorId; }
+    public Instant getWindowStart() { return this.windowStart; }
+    public void setWindowStart(Instant windowStart) { this.windowStart = windowStart; }
+    public Instant getFirstAt() { return this.firstAt; }
+    public void setFirstAt(Instant firstAt) { this.firstAt = firstAt; }
+    public Instant getLastAt() { return this.lastAt; }
+    public void setLastAt(Instant lastAt) { this.lastAt = lastAt; }
+    public Integer getPoints() { return this.points; }
+    public void setPoints(Integer points) { this.points = points; }
+    public byte[] getData() { return this.data; }
+    public void setData(byte[] data) { this.data = data; }
+}
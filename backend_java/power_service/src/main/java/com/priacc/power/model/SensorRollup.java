@@ -0,0 +1,66 @@
+package com.priacc.power.model;
+
+import jakarta.persistence.*;
+import java.io.Serializable;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Count, sum, min and max of one sensor's readings in one minute, hour or day bucket. Updated by
+ * SensorRollupService with every flush of readings; never loaded through JPA.
+ */
+@Entity
+@Table(name = "sensor_rollups")
+@IdClass(SensorRollup.Key.class)
+public class SensorRollup {
+    @Id
+    @Column(name = "sensor_id")
+    private Long sensorId;
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(length = 8)
+    private Resolution resolution;
+
+    @Id
+    @Column(name = "bucket_start")
+    private Instant bucketStart;
+
+    private Long samples;
+    private Double total;
+
+    @Column(name = "min_value")
+    private Double minValue;
+
+    @Column(name = "max_value")
+    private Double maxValue;
+
+    public enum Resolution {
+        MINUTE(Duration.ofMinutes(1)), HOUR(Duration.ofHours(1)), DAY(Duration.ofDays(1));
+
+        private final Duration length;
+
+        Resolution(Duration length) {
+            this.length = length;
+        }
+
+        public Duration length() { return length; }
+    }
+
+    public record Key(Long sensorId, Resolution resolution, Instant bucketStart) implements Serializable {}
+
+    public Long getSensorId() { return this.sensorId; }
+    public void setSensorId(Long sensorId) { this.sensorId = sensorId; }
+    public Resolution getResolution() { return this.resolution; }
+    public void setResolution(Resolution resolution) { this.resolution = resolution; }
+    public Instant getBucketStart() { return this.bucketStart; }
+    public void setBucketStart(Instant bucketStart) { this.bucketStart = bucketStart; }
+    public Long getSamples() { return this.samples; }
+    public void setSamples(Long samples) { this.samples = samples; }
+    public Double getTotal() { return this.total; }
+    public void setTotal(Double total) { this.total = total; }
+    public Double getMinValue() { return this.minValue; }
+    public void setMinValue(Double minValue) { this.minValue = minValue; }
+    public Double getMaxValue() { return this.maxValue; }
+    public void setMaxValue(Double maxValue) { this.maxValue = maxValue; }
+}
@@ -0,0 +1,54 @@
+package com.priacc.power.model;
+
+import jakarta.persistence.*;
+
+/**
+ * A condition checked against every reading of a user's sensors of one type. THRESHOLD fires when
+ * a value is outside [minValue, maxValue] (either bound optional), RATE_OF_CHANGE when a value
+ * moves faster than maxRate per second, and HEARTBEAT when a sensor sends nothing for
+ * heartbeatSeconds.
+ */
+@Entity
+@Table(name = "sensor_rules", indexes = @Index(name = "idx_sensor_rules_user_id_id", columnList = "user_id, id"))
+public class SensorRule {
+    public enum Kind { THRESHOLD, RATE_OF_CHANGE, HEARTBEAT }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id")
+    private Long userId;
+
+    private String type;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16)
+    private Kind kind;
+
+    private Double minValue;
+    private Double maxValue;
+    private Double maxRate;
+    private Long heartbeatSeconds;
+    private String priority;
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getUserId() { return this.userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+    public String getType() { return this.type; }
+    public void setType(String type) { this.type = type; }
+    public Kind getKind() { return this.kind; }
+    public void setKind(Kind kind) { this.kind = kind; }
+    public Double getMinValue() { return this.minValue; }
+    public void setMinValue(Double minValue) { this.minValue = minValue; }
+    public Double getMaxValue() { return this.maxValue; }
+    public void setMaxValue(Double maxValue) { this.maxValue = maxValue; }
+    public Double getMaxRate() { return this.maxRate; }
+    public void setMaxRate(Double maxRate) { this.maxRate = maxRate; }
+    public Long getHeartbeatSeconds() { return this.heartbeatSeconds; }
+    public void setHeartbeatSeconds(Long heartbeatSeconds) { this.heartbeatSeconds = heartbeatSeconds; }
+    public String getPriority() { return this.priority; }
+    public void setPriority(String priority) { this.priority = priority; }
+}
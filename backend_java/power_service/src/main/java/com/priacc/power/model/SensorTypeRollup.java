@@ -0,0 +1,59 @@
+package com.priacc.power.model;
+
+import jakarta.persistence.*;
+import java.io.Serializable;
+import java.time.Instant;
+
+/**
+ * Count, sum, min and max of the readings of all of a user's sensors of one type, in one minute,
+ * hour or day bucket. A reading counts towards the type its sensor had when it was written.
+ */
+@Entity
+@Table(name = "sensor_type_rollups")
+@IdClass(SensorTypeRollup.Key.class)
+public class SensorTypeRollup {
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Id
+    private String type;
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(length = 8)
+    private SensorRollup.Resolution resolution;
+
+    @Id
+    @Column(name = "bucket_start")
+    private Instant bucketStart;
+
+    private Long samples;
+    private Double total;
+
+    @Column(name = "min_value")
+    private Double minValue;
+
+    @Column(name = "max_value")
+    private Double maxValue;
+
+    public record Key(Long userId, String type, SensorRollup.Resolution resolution, Instant bucketStart)
+            implements Serializable {}
+
+    public Long getUserId() { return this.userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+    public String getType() { return this.type; }
+    public void setType(String type) { this.type = type; }
+    public SensorRollup.Resolution getResolution() { return this.resolution; }
+    public void setResolution(SensorRollup.Resolution resolution) { this.resolution = resolution; }
+    public Instant getBucketStart() { return this.bucketStart; }
+    public void setBucketStart(Instant bucketStart) { this.bucketStart = bucketStart; }
+    public Long getSamples() { return this.samples; }
+    public void setSamples(Long samples) { this.samples = samples; }
+    public Double getTotal() { return this.total; }
+    public void setTotal(Double total) { this.total = total; }
+    public Double getMinValue() { return this.minValue; }
+    public void setMinValue(Double minValue) { this.minValue = minValue; }
+    public Double getMaxValue() { return this.maxValue; }
+    public void setMaxValue(Double maxValue) { this.maxValue = maxValue; }
+}
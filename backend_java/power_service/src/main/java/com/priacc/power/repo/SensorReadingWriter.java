@@ -0,0 +1,105 @@
+package com.priacc.power.repo;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Instant;
+
+/**
+ * Bulk writes of sensor readings, given as parallel arrays of sensor id, time (epoch microseconds)
+ * and value. Readings go in with one COPY; the sensors' current values with one UPDATE over arrays.
+ */
+@Component
+public class SensorReadingWriter {
+
+    private static final String COPY_SQL =
+            "COPY sensor_readings (sensor_id, recorded_at, value) FROM STDIN WITH (FORMAT csv)";
+    private static final String UPDATE_SQL =
+            "update sensors s set value = v.value, last_updated = timestamptz 'epoch' + v.micros * interval '1 microsecond'"
+            + " from unnest(?, ?, ?) as v(id, micros, value)"
+            + " where s.id = v.id and (s.last_updated is null"
+            + " or s.last_updated <= timestamptz 'epoch' + v.micros * interval '1 microsecond')";
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public SensorReadingWriter(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /** Appends the first {@code count} readings to sensor_readings. */
+    public void append(long[] sensorIds, long[] micros, double[] values, int count) {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            CopyIn copy = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_SQL);
+            try {
+                StringBuilder chunk = new StringBuilder(CHUNK_SIZE + 256);
+                for (int i = 0; i < count; i++) {
+                    chunk.append(sensorIds[i]).append(',')
+                            .append(instant(micros[i])).append(',')
+                            .append(values[i]).append('\n');
+                    if (chunk.length() >= CHUNK_SIZE) {
+                        write(copy, chunk);
+                    }
+                }
+                write(copy, chunk);
+                copy.endCopy();
+                return null;
+            } finally {
+                if (copy.isActive()) {
+                    copy.cancelCopy();
+                }
+            }
+        });
+    }
+
+    /**
+     * Sets value and lastUpdated of each of the first {@code count} sensors, unless the sensor
+     * already has a newer lastUpdated. Sensors that no longer exist are skipped.
+     */
+    public void updateLatest(long[] sensorIds, long[] micros, double[] values, int count) {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            Long[] ids = new Long[count];
+            Long[] times = new Long[count];
+            Double[] latest = new Double[count];
+            for (int i = 0; i < count; i++) {
+                ids[i] = sensorIds[i];
+                times[i] = micros[i];
+                latest[i] = values[i];
+            }
+            Array idArray = connection.createArrayOf("bigint", ids);
+            Array timeArray = connection.createArrayOf("bigint", times);
+            Array valueArray = connection.createArrayOf("float8", latest);
+            try (PreparedStatement statement = connection.prepareStatement(UPDATE_SQL)) {
+                statement.setArray(1, idArray);
+                statement.setArray(2, timeArray);
+                statement.setArray(3, valueArray);
+                statement.executeUpdate();
+            } finally {
+                idArray.free();
+                timeArray.free();
+                valueArray.free();
+            }
+            return null;
+        });
+    }
+
+    private static Instant instant(long micros) {
+        return Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000L), Math.floorMod(micros, 1_000_000L) * 1000L);
+    }
+
+    private static void write(CopyIn copy, StringBuilder chunk) throws SQLException {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        byte[] bytes = chunk.toString().getBytes(StandardCharsets.UTF_8);
+        copy.writeToCopy(bytes, 0, bytes.length);
+        chunk.setLength(0);
+    }
+}
@@ -1,9 +1,21 @@
 package com.priacc.power.repo;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.QueryHints;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import com.priacc.power.model.Sensor;
 import java.util.List;
+import java.util.stream.Stream;
 
-public interface SensorRepository extends JpaRepository<Sensor, Long> {
+public interface SensorRepository extends JpaRepository<Sensor, Long>, JpaSpecificationExecutor<Sensor> {
     List<Sensor> findByUserId(Long userId);
+
+    /** Reads through a server-side cursor: call inside a transaction and close the stream. */
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    Stream<Sensor> streamByUserIdOrderById(Long userId);
 }
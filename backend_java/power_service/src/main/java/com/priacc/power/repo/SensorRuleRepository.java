@@ -0,0 +1,11 @@
+package com.priacc.power.repo;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import com.priacc.power.model.SensorRule;
+import java.util.List;
+
+public interface SensorRuleRepository extends JpaRepository<SensorRule, Long> {
+    List<SensorRule> findByUserIdOrderById(Long userId);
+
+    List<SensorRule> findByUserIdAndTypeIgnoreCase(Long userId, String type);
+}
@@ -0,0 +1,106 @@
+package com.priacc.power.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Sends alerts raised by the sensor rules to alert-service, batched: alerts wait in a pending
+ * queue and go out every sensors.alerts.flush-interval in POSTs to /alerts/batch.
+ *
+ * Alerts carry a key (the sensor, the rule and how it was broken); one raised while another
+ * with its key is still pending is dropped as a duplicate. If alert-service can't be reached the
+ * batch is kept and retried on the next flush; past sensors.alerts.max-pending, new alerts are
+ * dropped (counted in sensor.alerts.dropped).
+ */
+@Component
+public class SensorAlertPublisher {
+
+    /** An alert as alert-service takes it. */
+    public record AlertPayload(String title, String message, String priority, Instant timestamp, Long userId) {}
+
+    private static final Logger log = LoggerFactory.getLogger(SensorAlertPublisher.class);
+    private static final int BATCH_SIZE = 1000;
+
+    private final RestTemplate restTemplate;
+    private final String batchUrl;
+    private final int maxPending;
+    private final Map<String, AlertPayload> pending = new LinkedHashMap<>();   // guarded by this
+
+    private final Counter raised;
+    private final Counter deduplicated;
+    private final Counter dropped;
+    private final Counter sent;
+
+    public SensorAlertPublisher(RestTemplate restTemplate, MeterRegistry meterRegistry,
+                                @Value("${alert.service.url:http://alert-service:8091}") String alertServiceUrl,
+                                @Value("${sensors.alerts.max-pending:10000}") int maxPending) {
+        this.restTemplate = restTemplate;
+        this.batchUrl = alertServiceUrl + "/alerts/batch";
+        this.maxPending = maxPending;
+        this.raised = meterRegistry.counter("sensor.alerts.raised");
+        this.deduplicated = meterRegistry.counter("sensor.alerts.deduplicated");
+        this.dropped = meterRegistry.counter("sensor.alerts.dropped");
+        this.sent = meterRegistry.counter("sensor.alerts.sent");
+        meterRegistry.gauge("sensor.alerts.pending", this, SensorAlertPublisher::pendingCount);
+    }
+
+    /** Queues the alert, which is only built if it isn't a duplicate and there's room for it. */
+    public synchronized void publish(String key, Supplier<AlertPayload> alert) {
+        raised.increment();
+        if (pending.containsKey(key)) {
+            deduplicated.increment();
+        } else if (pending.size() >= maxPending) {
+            dropped.increment();
+        } else {
+            pending.put(key, alert.get());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${sensors.alerts.flush-interval:1s}")
+    public void flush() {
+        List<Map.Entry<String, AlertPayload>> batch;
+        synchronized (this) {
+            batch = new ArrayList<>(pending.entrySet());
+        }
+        for (int from = 0; from < batch.size(); from += BATCH_SIZE) {
+            List<Map.Entry<String, AlertPayload>> part = batch.subList(from, Math.min(from + BATCH_SIZE, batch.size()));
+            try {
+                restTemplate.postForEntity(batchUrl, part.stream().map(Map.Entry::getValue).toList(), Void.class);
+            } catch (RestClientException e) {
+                log.warn("Failed to send {} sensor alerts to alert-service, retrying on the next flush: {}",
+                        batch.size() - from, e.getMessage());
+                return;
+            }
+            synchronized (this) {
+                for (Map.Entry<String, AlertPayload> sentAlert : part) {
+                    pending.remove(sentAlert.getKey(), sentAlert.getValue());
+                }
+            }
+            sent.increment(part.size());
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        flush();
+    }
+
+    private synchronized double pendingCount() {
+        return pending.size();
+    }
+}
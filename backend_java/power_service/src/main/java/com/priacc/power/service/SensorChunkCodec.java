@@ -0,0 +1,192 @@
+package com.priacc.power.service;
+
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * Gorilla-style encoding of a run of readings, oldest first, as a bit stream: the point count, the
+ * first timestamp (epoch microseconds) and value verbatim, then per point the delta-of-delta of the
+ * timestamp and the XOR of the value with the previous one.
+ *
+ * Delta-of-delta buckets are sized for microsecond clocks: meters reporting on a steady period with
+ * millisecond jitter mostly take 1 or 14 bits per timestamp. A value equal to the previous one takes
+ * 1 bit; otherwise only the meaningful bits of the XOR are stored, reusing the previous
+ * leading/trailing zero window when they fit in it.
+ */
+final class SensorChunkCodec {
+
+    interface PointConsumer {
+        void accept(long micros, double value);
+    }
+
+    private SensorChunkCodec() {}
+
+    static long micros(Instant instant) {
+        return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), 1_000_000L), instant.getNano() / 1000);
+    }
+
+    static Instant instant(long micros) {
+        return Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000L), Math.floorMod(micros, 1_000_000L) * 1000L);
+    }
+
+    /** Encodes points [from, to) of the arrays, which must be in timestamp order. */
+    static byte[] encode(long[] micros, double[] values, int from, int to) {
+        BitWriter out = new BitWriter(Math.max(16, (to - from) * 3));
+        out.write(to - from, 32);
+        if (to == from) {
+            return out.toByteArray();
+        }
+        out.write(micros[from], 64);
+        out.write(Double.doubleToRawLongBits(values[from]), 64);
+
+        long previousTime = micros[from];
+        long previousDelta = 0;
+        long previousBits = Double.doubleToRawLongBits(values[from]);
+        int previousLeading = -1;
+        int previousTrailing = 0;
+        for (int i = from + 1; i < to; i++) {
+            long delta = micros[i] - previousTime;
+            long dod = delta - previousDelta;
+            if (dod == 0) {
+                out.write(0, 1);
+            } else if (dod >= -(1L << 11) && dod < (1L << 11)) {
+                out.write(0b10, 2);
+                out.write(dod, 12);
+            } else if (dod >= -(1L << 19) && dod < (1L << 19)) {
+                out.write(0b110, 3);
+                out.write(dod, 20);
+            } else if (dod >= Integer.MIN_VALUE && dod <= Integer.MAX_VALUE) {
+                out.write(0b1110, 4);
+                out.write(dod, 32);
+            } else {
+                out.write(0b1111, 4);
+                out.write(dod, 64);
+            }
+            previousTime = micros[i];
+            previousDelta = delta;
+
+            long bits = Double.doubleToRawLongBits(values[i]);
+            long xor = bits ^ previousBits;
+            if (xor == 0) {
+                out.write(0, 1);
+            } else {
+                int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+                int trailing = Long.numberOfTrailingZeros(xor);
+                if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+                    out.write(0b10, 2);
+                    out.write(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+                } else {
+                    int length = 64 - leading - trailing;
+                    out.write(0b11, 2);
+                    out.write(leading, 5);
+                    out.write(length & 63, 6);   // 64 is stored as 0
+                    out.write(xor >>> trailing, length);
+                    previousLeading = leading;
+                    previousTrailing = trailing;
+                }
+            }
+            previousBits = bits;
+        }
+        return out.toByteArray();
+    }
+
+    static int count(byte[] data) {
+        return (int) new BitReader(data).read(32);
+    }
+
+    static void decode(byte[] data, PointConsumer consumer) {
+        BitReader in = new BitReader(data);
+        int count = (int) in.read(32);
+        if (count == 0) {
+            return;
+        }
+        long time = in.read(64);
+        long bits = in.read(64);
+        consumer.accept(time, Double.longBitsToDouble(bits));
+
+        long delta = 0;
+        int leading = 0;
+        int trailing = 0;
+        for (int i = 1; i < count; i++) {
+            long dod;
+            if (in.read(1) == 0) {
+                dod = 0;
+            } else if (in.read(1) == 0) {
+                dod = in.readSigned(12);
+            } else if (in.read(1) == 0) {
+                dod = in.readSigned(20);
+            } else if (in.read(1) == 0) {
+                dod = in.readSigned(32);
+            } else {
+                dod = in.read(64);
+            }
+            delta += dod;
+            time += delta;
+
+            if (in.read(1) == 1) {
+                if (in.read(1) == 1) {
+                    leading = (int) in.read(5);
+                    int length = (int) in.read(6);
+                    trailing = 64 - leading - (length == 0 ? 64 : length);
+                }
+                bits ^= in.read(64 - leading - trailing) << trailing;
+            }
+            consumer.accept(time, Double.longBitsToDouble(bits));
+        }
+    }
+
+    private static final class BitWriter {
+        private byte[] bytes;
+        private long position;
+
+        BitWriter(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        /** Writes the low {@code count} bits of the value, most significant first. */
+        void write(long value, int count) {
+            while (count > 0) {
+                int index = (int) (position >>> 3);
+                if (index == bytes.length) {
+                    bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                }
+                int free = 8 - (int) (position & 7);
+                int n = Math.min(free, count);
+                int chunk = (int) (value >>> (count - n)) & ((1 << n) - 1);
+                bytes[index] |= (byte) (chunk << (free - n));
+                position += n;
+                count -= n;
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, (int) ((position + 7) >>> 3));
+        }
+    }
+
+    private static final class BitReader {
+        private final byte[] bytes;
+        private long position;
+
+        BitReader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        long read(int count) {
+            long result = 0;
+            while (count > 0) {
+                int available = 8 - (int) (position & 7);
+                int n = Math.min(available, count);
+                int chunk = ((bytes[(int) (position >>> 3)] & 0xFF) >>> (available - n)) & ((1 << n) - 1);
+                result = (result << n) | chunk;
+                position += n;
+                count -= n;
+            }
+            return result;
+        }
+
+        long readSigned(int count) {
+            return read(count) << (64 - count) >> (64 - count);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.priacc.power.service;
+
+import java.util.Arrays;
+
+/**
+ * Readings drained from the buffers for one write, as parallel primitive arrays: every reading,
+ * and the newest reading of each sensor in it.
+ */
+final class SensorReadingBatch {
+
+    long[] sensorIds = new long[1024];
+    long[] micros = new long[1024];
+    double[] values = new double[1024];
+    int size;
+
+    long[] latestSensorIds = new long[64];
+    long[] latestMicros = new long[64];
+    double[] latestValues = new double[64];
+    int latestSize;
+
+    void add(long sensorId, long time, double value) {
+        if (size == sensorIds.length) {
+            sensorIds = Arrays.copyOf(sensorIds, size * 2);
+            micros = Arrays.copyOf(micros, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        sensorIds[size] = sensorId;
+        micros[size] = time;
+        values[size] = value;
+        size++;
+    }
+
+    void latest(long sensorId, long time, double value) {
+        if (latestSize == latestSensorIds.length) {
+            latestSensorIds = Arrays.copyOf(latestSensorIds, latestSize * 2);
+            latestMicros = Arrays.copyOf(latestMicros, latestSize * 2);
+            latestValues = Arrays.copyOf(latestValues, latestSize * 2);
+        }
+        latestSensorIds[latestSize] = sensorId;
+        latestMicros[latestSize] = time;
+        latestValues[latestSize] = value;
+        latestSize++;
+    }
+}
@@ -0,0 +1,66 @@
+package com.priacc.power.service;
+
+/**
+ * Fixed-size ring of one sensor's readings that have not been written yet. When it is full, a new
+ * reading replaces the oldest one.
+ */
+final class SensorReadingBuffer {
+
+    private final long[] micros;
+    private final double[] values;
+    private int start;
+    private int size;
+    private volatile long ownerId;
+
+    SensorReadingBuffer(long ownerId, int capacity) {
+        this.ownerId = ownerId;
+        this.micros = new long[capacity];
+        this.values = new double[capacity];
+    }
+
+    long ownerId() {
+        return ownerId;
+    }
+
+    void ownerId(long ownerId) {
+        this.ownerId = ownerId;
+    }
+
+    /** Adds a reading; false if that pushed out the oldest unwritten one. */
+    synchronized boolean add(long time, double value) {
+        int end = (start + size) % micros.length;
+        micros[end] = time;
+        values[end] = value;
+        if (size == micros.length) {
+            start = (start + 1) % micros.length;
+            return false;
+        }
+        size++;
+        return true;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /** Moves every reading into the batch, and the newest of them into its latest values. */
+    synchronized void drainTo(long sensorId, SensorReadingBatch batch) {
+        if (size == 0) {
+            return;
+        }
+        long latestTime = Long.MIN_VALUE;
+        double latestValue = 0;
+        for (int i = 0; i < size; i++) {
+            int index = (start + i) % micros.length;
+            batch.add(sensorId, micros[index], values[index]);
+            // Readings arrive in order more often than not; on a tie the later arrival wins
+            if (micros[index] >= latestTime) {
+                latestTime = micros[index];
+                latestValue = values[index];
+            }
+        }
+        batch.latest(sensorId, latestTime, latestValue);
+        start = 0;
+        size = 0;
+    }
+}
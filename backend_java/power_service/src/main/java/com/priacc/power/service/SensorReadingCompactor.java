@@ -0,0 +1,168 @@
+package com.priacc.power.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Moves readings out of the row-per-reading sensor_readings table into compressed per-sensor
+ * chunks (see {@link SensorChunkCodec}), one per sensor and sensors.readings.chunk-window.
+ *
+ * A window is compacted once it has been closed for sensors.readings.compaction-delay. The rows
+ * are deleted and returned by one statement, and their chunks written in the same transaction, so
+ * a reading is always in exactly one of the two tables. Readings that arrive for a window after it
+ * was compacted are merged into its chunk on the next run.
+ */
+@Component
+public class SensorReadingCompactor {
+
+    private static final Logger log = LoggerFactory.getLogger(SensorReadingCompactor.class);
+    private static final String TAKE_SQL =
+            "with taken as (delete from sensor_readings where sensor_id = any(?) and recorded_at < ?"
+            + " returning sensor_id, recorded_at, value)"
+            + " select sensor_id, recorded_at, value from taken order by sensor_id, recorded_at";
+    private static final String EXISTING_SQL =
+            "select sensor_id, window_start, data from sensor_reading_chunks"
+            + " where sensor_id = any(?) and window_start >= ? and window_start < ?";
+    private static final String UPSERT_SQL =
+            "insert into sensor_reading_chunks (sensor_id, window_start, first_at, last_at, points, data)"
+            + " values (?, ?, ?, ?, ?, ?)"
+            + " on conflict (sensor_id, window_start) do update set first_at = excluded.first_at,"
+            + " last_at = excluded.last_at, points = excluded.points, data = excluded.data";
+    private static final int SENSORS_PER_TRANSACTION = 100;
+
+    private record ChunkKey(long sensorId, long windowStart) {}
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final long windowMicros;
+    private final Duration delay;
+
+    public SensorReadingCompactor(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                  @Value("${sensors.readings.chunk-window:1h}") Duration window,
+                                  @Value("${sensors.readings.compaction-delay:5m}") Duration delay) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.windowMicros = window.toNanos() / 1000;
+        this.delay = delay;
+    }
+
+    @Scheduled(initialDelayString = "${sensors.readings.compaction-interval:1m}",
+               fixedDelayString = "${sensors.readings.compaction-interval:1m}")
+    public void compact() {
+        long cutoff = windowStart(SensorChunkCodec.micros(Instant.now().minus(delay)));
+        OffsetDateTime before = time(cutoff);
+        try {
+            List<Long> sensorIds = jdbcTemplate.queryForList(
+                    "select distinct sensor_id from sensor_readings where recorded_at < ?", Long.class, before);
+            int chunks = 0;
+            for (int i = 0; i < sensorIds.size(); i += SENSORS_PER_TRANSACTION) {
+                List<Long> group = sensorIds.subList(i, Math.min(i + SENSORS_PER_TRANSACTION, sensorIds.size()));
+                Integer written = transactionTemplate.execute(tx -> compact(group.toArray(Long[]::new), before));
+                chunks += written != null ? written : 0;
+            }
+            if (chunks > 0) {
+                log.debug("Compacted sensor readings before {} into {} chunks", before, chunks);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Sensor reading compaction failed, retrying on the next run: {}", e.getMessage());
+        }
+    }
+
+    private int compact(Long[] sensorIds, OffsetDateTime before) {
+        SensorReadingBatch taken = new SensorReadingBatch();
+        jdbcTemplate.query(con -> {
+            PreparedStatement statement = con.prepareStatement(TAKE_SQL);
+            statement.setArray(1, con.createArrayOf("bigint", sensorIds));
+            statement.setObject(2, before);
+            return statement;
+        }, (RowCallbackHandler) rs -> taken.add(rs.getLong(1),
+                SensorChunkCodec.micros(rs.getObject(2, OffsetDateTime.class).toInstant()), rs.getDouble(3)));
+        if (taken.size == 0) {
+            return 0;
+        }
+
+        long earliest = Long.MAX_VALUE;
+        for (int i = 0; i < taken.size; i++) {
+            earliest = Math.min(earliest, taken.micros[i]);
+        }
+        long firstWindow = windowStart(earliest);
+        Map<ChunkKey, byte[]> existing = new HashMap<>();
+        jdbcTemplate.query(con -> {
+            PreparedStatement statement = con.prepareStatement(EXISTING_SQL);
+            statement.setArray(1, con.createArrayOf("bigint", sensorIds));
+            statement.setObject(2, time(firstWindow));
+            statement.setObject(3, before);
+            return statement;
+        }, (RowCallbackHandler) rs -> existing.put(new ChunkKey(rs.getLong(1),
+                SensorChunkCodec.micros(rs.getObject(2, OffsetDateTime.class).toInstant())), rs.getBytes(3)));
+
+        // Rows come back ordered by sensor and time, so each chunk is one run of them
+        List<Object[]> chunks = new ArrayList<>();
+        int start = 0;
+        for (int i = 1; i <= taken.size; i++) {
+            if (i == taken.size || taken.sensorIds[i] != taken.sensorIds[start]
+                    || windowStart(taken.micros[i]) != windowStart(taken.micros[start])) {
+                ChunkKey key = new ChunkKey(taken.sensorIds[start], windowStart(taken.micros[start]));
+                chunks.add(chunk(key, taken, start, i, existing.get(key)));
+                start = i;
+            }
+        }
+        jdbcTemplate.batchUpdate(UPSERT_SQL, chunks);
+        return chunks.size();
+    }
+
+    private Object[] chunk(ChunkKey key, SensorReadingBatch taken, int from, int to, byte[] existing) {
+        SensorReadingBatch points = taken;
+        if (existing != null) {
+            points = merge(key.sensorId(), existing, taken, from, to);
+            from = 0;
+            to = points.size;
+        }
+        return new Object[] {
+            key.sensorId(), time(key.windowStart()), time(points.micros[from]), time(points.micros[to - 1]),
+            to - from, SensorChunkCodec.encode(points.micros, points.values, from, to)
+        };
+    }
+
+    /** Merges late readings [from, to) of taken into what a chunk already holds, in time order. */
+    static SensorReadingBatch merge(long sensorId, byte[] existing, SensorReadingBatch taken, int from, int to) {
+        SensorReadingBatch merged = new SensorReadingBatch();
+        int[] next = {from};
+        SensorChunkCodec.decode(existing, (time, value) -> {
+            while (next[0] < to && taken.micros[next[0]] < time) {
+                merged.add(sensorId, taken.micros[next[0]], taken.values[next[0]]);
+                next[0]++;
+            }
+            merged.add(sensorId, time, value);
+        });
+        for (int i = next[0]; i < to; i++) {
+            merged.add(sensorId, taken.micros[i], taken.values[i]);
+        }
+        return merged;
+    }
+
+    private long windowStart(long micros) {
+        return Math.floorDiv(micros, windowMicros) * windowMicros;
+    }
+
+    private static OffsetDateTime time(long micros) {
+        return SensorChunkCodec.instant(micros).atOffset(ZoneOffset.UTC);
+    }
+}
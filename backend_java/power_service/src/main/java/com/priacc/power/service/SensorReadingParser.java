@@ -0,0 +1,126 @@
+package com.priacc.power.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Reads {sensorId, value, timestamp} readings off a request body, either a JSON array of objects or
+ * NDJSON (one object per line), straight from the parser's tokens into primitive arrays. The
+ * timestamp is optional, as ISO-8601 or epoch milliseconds, and defaults to the time of receipt.
+ *
+ * Malformed input surfaces as IllegalArgumentException naming the offending reading.
+ */
+final class SensorReadingParser {
+
+    private final JsonParser parser;
+    private final int maxReadings;
+    private int row;
+
+    private SensorReadingParser(JsonParser parser, int maxReadings) {
+        this.parser = parser;
+        this.maxReadings = maxReadings;
+    }
+
+    static SensorReadingBatch parse(JsonFactory jsonFactory, InputStream body, int maxReadings) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            return new SensorReadingParser(parser, maxReadings).readAll();
+        }
+    }
+
+    private SensorReadingBatch readAll() throws IOException {
+        SensorReadingBatch batch = new SensorReadingBatch();
+        long now = SensorChunkCodec.micros(Instant.now());
+        JsonToken token = advance();
+        boolean array = token == JsonToken.START_ARRAY;
+        if (array) {
+            token = advance();
+        }
+        while (token != null && !(array && token == JsonToken.END_ARRAY)) {
+            row++;
+            if (token != JsonToken.START_OBJECT) {
+                throw invalid("expected an object but found " + token);
+            }
+            if (row > maxReadings) {
+                throw new IllegalArgumentException("A request holds at most " + maxReadings + " readings");
+            }
+            Long sensorId = null;
+            Double value = null;
+            long time = now;
+            while (advance() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken fieldValue = advance();
+                switch (field) {
+                    case "sensorId", "sensor_id" -> sensorId = longValue(fieldValue, field);
+                    case "value" -> value = doubleValue(fieldValue, field);
+                    case "timestamp" -> time = timeValue(fieldValue);
+                    default -> parser.skipChildren();
+                }
+            }
+            if (sensorId == null || value == null) {
+                throw invalid("sensorId and value are required");
+            }
+            batch.add(sensorId, time, value);
+            token = advance();
+        }
+        return batch;
+    }
+
+    private Long longValue(JsonToken token, String field) throws IOException {
+        try {
+            return switch (token) {
+                case VALUE_NUMBER_INT -> parser.getLongValue();
+                case VALUE_STRING -> Long.valueOf(parser.getText());
+                default -> throw invalid(field + " must be an integer");
+            };
+        } catch (NumberFormatException | JsonProcessingException e) {
+            throw invalid(field + " must be an integer");
+        }
+    }
+
+    private Double doubleValue(JsonToken token, String field) throws IOException {
+        try {
+            double value = switch (token) {
+                case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> parser.getDoubleValue();
+                case VALUE_STRING -> Double.parseDouble(parser.getText());
+                default -> throw invalid(field + " must be a number");
+            };
+            if (!Double.isFinite(value)) {
+                throw invalid(field + " must be finite");
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            throw invalid(field + " must be a number");
+        }
+    }
+
+    private long timeValue(JsonToken token) throws IOException {
+        try {
+            return switch (token) {
+                case VALUE_NUMBER_INT -> Math.multiplyExact(parser.getLongValue(), 1000L);
+                case VALUE_STRING -> SensorChunkCodec.micros(Instant.parse(parser.getText()));
+                default -> throw invalid("timestamp must be ISO-8601 or epoch milliseconds");
+            };
+        } catch (DateTimeParseException | ArithmeticException | JsonProcessingException e) {
+            throw invalid("timestamp must be ISO-8601 or epoch milliseconds");
+        }
+    }
+
+    private JsonToken advance() throws IOException {
+        try {
+            return parser.nextToken();
+        } catch (JsonProcessingException e) {
+            throw invalid(e.getOriginalMessage());
+        }
+    }
+
+    private IllegalArgumentException invalid(String reason) {
+        return new IllegalArgumentException("Invalid reading " + Math.max(row, 1) + ": " + reason);
+    }
+}
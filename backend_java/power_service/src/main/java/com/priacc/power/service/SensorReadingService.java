@@ -0,0 +1,275 @@
+package com.priacc.power.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.priacc.power.model.Sensor;
+import com.priacc.power.repo.SensorReadingWriter;
+import com.priacc.power.repo.SensorRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Takes sensor readings at meter rate without a database round trip per reading.
+ *
+ * Accepted readings go into a {@link SensorReadingBuffer} per sensor. A flush every
+ * sensors.readings.flush-interval drains all buffers into one batch, which is appended to
+ * sensor_readings with COPY, sets each sensor's value and lastUpdated to its newest reading and is
+ * added onto the {@link SensorRollupService} rollups, in one transaction. A batch that fails to
+ * write is retried first on the next flush; meanwhile the buffers keep filling, and once one is
+ * full its oldest readings are dropped (counted in sensor.readings.dropped). Readings still
+ * buffered when the service stops are lost unless the final flush succeeds.
+ *
+ * Once their window has closed, readings are compacted into sensor_reading_chunks by
+ * {@link SensorReadingCompactor}; {@link #history} reads both.
+ */
+@Service
+public class SensorReadingService {
+
+    public record IngestResult(int accepted, int rejected) {}
+
+    public record ReadingPoint(Instant timestamp, double value) {}
+
+    public static final int DEFAULT_HISTORY_LIMIT = 1000;
+    public static final int MAX_HISTORY_LIMIT = 100_000;
+
+    private static final Logger log = LoggerFactory.getLogger(SensorReadingService.class);
+
+    private final SensorRepository sensorRepository;
+    private final SensorReadingWriter writer;
+    private final SensorRollupService rollups;
+    private final SensorRuleEngine ruleEngine;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate snapshotTemplate;
+    private final JsonFactory jsonFactory;
+    private final int bufferCapacity;
+    private final int maxRequestReadings;
+
+    private final Map<Long, SensorReadingBuffer> buffers = new ConcurrentHashMap<>();
+    private SensorReadingBatch retry;   // guarded by this
+
+    private final Counter accepted;
+    private final Counter rejected;
+    private final Counter dropped;
+    private final Counter written;
+    private final Timer flushTimer;
+
+    public SensorReadingService(
+            SensorRepository sensorRepository,
+            SensorReadingWriter writer,
+            SensorRollupService rollups,
+            SensorRuleEngine ruleEngine,
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${sensors.readings.buffer-capacity:4096}") int bufferCapacity,
+            @Value("${sensors.readings.max-request-readings:100000}") int maxRequestReadings) {
+        this.sensorRepository = sensorRepository;
+        this.writer = writer;
+        this.rollups = rollups;
+        this.ruleEngine = ruleEngine;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // One snapshot for both tables, so readings the compactor moves meanwhile show up once
+        this.snapshotTemplate = new TransactionTemplate(transactionManager);
+        this.snapshotTemplate.setReadOnly(true);
+        this.snapshotTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.jsonFactory = objectMapper.getFactory();
+        this.bufferCapacity = bufferCapacity;
+        this.maxRequestReadings = maxRequestReadings;
+        this.accepted = meterRegistry.counter("sensor.readings.accepted");
+        this.rejected = meterRegistry.counter("sensor.readings.rejected");
+        this.dropped = meterRegistry.counter("sensor.readings.dropped");
+        this.written = meterRegistry.counter("sensor.readings.written");
+        this.flushTimer = meterRegistry.timer("sensor.readings.flush");
+        Gauge.builder("sensor.readings.buffered", this, SensorReadingService::buffered).register(meterRegistry);
+    }
+
+    /**
+     * Parses a JSON array or NDJSON body of readings and buffers those for sensors the user owns,
+     * checking each against the sensor rules; readings for other or unknown sensors are rejected.
+     * Throws IllegalArgumentException for malformed or oversized input, in which case nothing is
+     * buffered.
+     */
+    public IngestResult ingest(long userId, InputStream body) throws IOException {
+        SensorReadingBatch readings = SensorReadingParser.parse(jsonFactory, body, maxRequestReadings);
+
+        Set<Long> unknown = new HashSet<>();
+        for (int i = 0; i < readings.size; i++) {
+            if (!buffers.containsKey(readings.sensorIds[i])) {
+                unknown.add(readings.sensorIds[i]);
+            }
+        }
+        if (!unknown.isEmpty()) {
+            for (Sensor sensor : sensorRepository.findAllById(unknown)) {
+                if (sensor.getUserId() != null) {
+                    buffers.computeIfAbsent(sensor.getId(), id -> new SensorReadingBuffer(sensor.getUserId(), bufferCapacity));
+                }
+            }
+        }
+
+        int acceptedCount = 0;
+        int droppedCount = 0;
+        for (int i = 0; i < readings.size; i++) {
+            SensorReadingBuffer buffer = buffers.get(readings.sensorIds[i]);
+            if (buffer == null || buffer.ownerId() != userId) {
+                continue;
+            }
+            if (!buffer.add(readings.micros[i], readings.values[i])) {
+                droppedCount++;
+            }
+            ruleEngine.evaluate(readings.sensorIds[i], readings.micros[i], readings.values[i]);
+            acceptedCount++;
+        }
+        accepted.increment(acceptedCount);
+        rejected.increment(readings.size - acceptedCount);
+        if (droppedCount > 0) {
+            dropped.increment(droppedCount);
+            log.warn("Sensor reading buffers full, dropped the {} oldest unwritten readings", droppedCount);
+        }
+        return new IngestResult(acceptedCount, readings.size - acceptedCount);
+    }
+
+    /**
+     * The user's sensor's readings in [from, to), oldest first and at most limit of them, or empty
+     * if the sensor isn't theirs. Only the chunks overlapping the range are decoded; readings not
+     * compacted yet come from sensor_readings, read in the same snapshot as the chunks. Readings
+     * still buffered aren't included.
+     */
+    public Optional<List<ReadingPoint>> history(long userId, long sensorId, Instant from, Instant to, int limit) {
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("from must be before to");
+        }
+        if (limit < 1 || limit > MAX_HISTORY_LIMIT) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_HISTORY_LIMIT);
+        }
+        Optional<Sensor> sensor = sensorRepository.findById(sensorId);
+        if (sensor.isEmpty() || sensor.get().getUserId() == null || sensor.get().getUserId() != userId) {
+            return Optional.empty();
+        }
+
+        long fromMicros = SensorChunkCodec.micros(from);
+        long toMicros = SensorChunkCodec.micros(to);
+        OffsetDateTime fromTime = from.atOffset(ZoneOffset.UTC);
+        OffsetDateTime toTime = to.atOffset(ZoneOffset.UTC);
+        // Chunks don't overlap, so decoding them in window order yields their points in time order
+        SensorReadingBatch compacted = new SensorReadingBatch();
+        SensorReadingBatch recent = new SensorReadingBatch();
+        snapshotTemplate.executeWithoutResult(tx -> {
+            jdbcTemplate.query("select data from sensor_reading_chunks where sensor_id = ? and window_start < ?"
+                            + " and last_at >= ? order by window_start",
+                    (RowCallbackHandler) rs -> {
+                        if (compacted.size < limit) {
+                            SensorChunkCodec.decode(rs.getBytes(1), (time, value) -> {
+                                if (time >= fromMicros && time < toMicros && compacted.size < limit) {
+                                    compacted.add(sensorId, time, value);
+                                }
+                            });
+                        }
+                    }, sensorId, toTime, fromTime);
+            jdbcTemplate.query("select recorded_at, value from sensor_readings where sensor_id = ? and recorded_at >= ?"
+                            + " and recorded_at < ? order by recorded_at limit ?",
+                    (RowCallbackHandler) rs -> recent.add(sensorId,
+                            SensorChunkCodec.micros(rs.getObject(1, OffsetDateTime.class).toInstant()), rs.getDouble(2)),
+                    sensorId, fromTime, toTime, limit);
+        });
+
+        // Late readings for an already compacted window can sit in either table until the next run
+        List<ReadingPoint> points = new ArrayList<>(Math.min(limit, compacted.size + recent.size));
+        int i = 0;
+        int j = 0;
+        while (points.size() < limit && (i < compacted.size || j < recent.size)) {
+            if (j == recent.size || (i < compacted.size && compacted.micros[i] <= recent.micros[j])) {
+                points.add(new ReadingPoint(SensorChunkCodec.instant(compacted.micros[i]), compacted.values[i]));
+                i++;
+            } else {
+                points.add(new ReadingPoint(SensorChunkCodec.instant(recent.micros[j]), recent.values[j]));
+                j++;
+            }
+        }
+        return Optional.of(points);
+    }
+
+    /** Keeps a buffered sensor's owner in step with the sensor. */
+    public void sensorUpdated(Sensor sensor) {
+        SensorReadingBuffer buffer = buffers.get(sensor.getId());
+        if (buffer != null && sensor.getUserId() != null) {
+            buffer.ownerId(sensor.getUserId());
+        }
+    }
+
+    /** Discards the readings of a deleted sensor. */
+    public void sensorDeleted(Long sensorId) {
+        buffers.remove(sensorId);
+    }
+
+    @Scheduled(fixedDelayString = "${sensors.readings.flush-interval:1s}")
+    public synchronized void flush() {
+        if (retry != null) {
+            if (!write(retry)) {
+                return;
+            }
+            retry = null;
+        }
+        SensorReadingBatch batch = new SensorReadingBatch();
+        buffers.forEach((sensorId, buffer) -> buffer.drainTo(sensorId, batch));
+        if (batch.size > 0 && !write(batch)) {
+            retry = batch;
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        flush();
+    }
+
+    private boolean write(SensorReadingBatch batch) {
+        try {
+            flushTimer.record(() -> transactionTemplate.executeWithoutResult(tx -> {
+                writer.append(batch.sensorIds, batch.micros, batch.values, batch.size);
+                writer.updateLatest(batch.latestSensorIds, batch.latestMicros, batch.latestValues, batch.latestSize);
+                rollups.add(batch);
+            }));
+            written.increment(batch.size);
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("Failed to write {} sensor readings, retrying on the next flush: {}", batch.size, e.getMessage());
+            return false;
+        }
+    }
+
+    private double buffered() {
+        long total = 0;
+        for (SensorReadingBuffer buffer : buffers.values()) {
+            total += buffer.size();
+        }
+        return total;
+    }
+}
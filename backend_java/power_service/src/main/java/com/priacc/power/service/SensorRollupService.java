@@ -0,0 +1,259 @@
+package com.priacc.power.service;
+
+import com.priacc.power.model.Sensor;
+import com.priacc.power.model.SensorRollup.Resolution;
+import com.priacc.power.repo.SensorRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Keeps per-sensor and per-type (for each user) count, sum, min and max of readings in minute,
+ * hour and day buckets, so window aggregates are read from at most one row per bucket.
+ *
+ * The rollups are updated in the same transaction as each flush of readings writes them: the
+ * batch is summarised into runs per sensor and bucket here, and the runs added onto the stored
+ * buckets by two upserts. A reading counts towards the type and owner its sensor has at that point.
+ * Buckets are pruned after sensors.rollups.{minute,hour,day}-retention.
+ */
+@Service
+public class SensorRollupService {
+
+    public record Bucket(Instant start, long samples, double mean, double min, double max) {}
+
+    public record Aggregate(Resolution resolution, Instant from, Instant to, long samples,
+                            Double mean, Double min, Double max, List<Bucket> buckets) {}
+
+    public static final int MAX_BUCKETS = 10_000;
+
+    private static final Logger log = LoggerFactory.getLogger(SensorRollupService.class);
+    private static final String RUNS =
+            " from unnest(?::bigint[], ?::text[], ?::bigint[], ?::bigint[], ?::float8[], ?::float8[], ?::float8[])"
+            + " as r(sensor_id, resolution, micros, samples, total, min_value, max_value)";
+    private static final String MERGE =
+            " do update set samples = %1$s.samples + excluded.samples, total = %1$s.total + excluded.total,"
+            + " min_value = least(%1$s.min_value, excluded.min_value),"
+            + " max_value = greatest(%1$s.max_value, excluded.max_value)";
+    private static final String SENSOR_SQL =
+            "insert into sensor_rollups (sensor_id, resolution, bucket_start, samples, total, min_value, max_value)"
+            + " select r.sensor_id, r.resolution, timestamptz 'epoch' + r.micros * interval '1 microsecond',"
+            + " sum(r.samples), sum(r.total), min(r.min_value), max(r.max_value)" + RUNS
+            + " group by 1, 2, 3 order by 1, 2, 3"
+            + " on conflict (sensor_id, resolution, bucket_start)" + MERGE.formatted("sensor_rollups");
+    private static final String TYPE_SQL =
+            "insert into sensor_type_rollups (user_id, type, resolution, bucket_start, samples, total, min_value, max_value)"
+            + " select s.user_id, s.type, r.resolution, timestamptz 'epoch' + r.micros * interval '1 microsecond',"
+            + " sum(r.samples), sum(r.total), min(r.min_value), max(r.max_value)" + RUNS
+            + " join sensors s on s.id = r.sensor_id where s.user_id is not null and s.type is not null"
+            + " group by 1, 2, 3, 4 order by 1, 2, 3, 4"
+            + " on conflict (user_id, type, resolution, bucket_start)" + MERGE.formatted("sensor_type_rollups");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SensorRepository sensorRepository;
+    private final Map<Resolution, Duration> retention;
+
+    public SensorRollupService(JdbcTemplate jdbcTemplate, SensorRepository sensorRepository,
+                               @Value("${sensors.rollups.minute-retention:2d}") Duration minuteRetention,
+                               @Value("${sensors.rollups.hour-retention:90d}") Duration hourRetention,
+                               @Value("${sensors.rollups.day-retention:1825d}") Duration dayRetention) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.sensorRepository = sensorRepository;
+        this.retention = Map.of(Resolution.MINUTE, minuteRetention, Resolution.HOUR, hourRetention,
+                Resolution.DAY, dayRetention);
+    }
+
+    /** Adds a batch of readings onto the rollups. Runs in the caller's transaction. */
+    void add(SensorReadingBatch batch) {
+        if (batch.size == 0) {
+            return;
+        }
+        Runs runs = new Runs();
+        for (Resolution resolution : Resolution.values()) {
+            runs.summarise(batch, resolution);
+        }
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            Array[] arrays = runs.toArrays(connection);
+            try {
+                for (String sql : new String[] {SENSOR_SQL, TYPE_SQL}) {
+                    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                        for (int i = 0; i < arrays.length; i++) {
+                            statement.setArray(i + 1, arrays[i]);
+                        }
+                        statement.executeUpdate();
+                    }
+                }
+            } finally {
+                for (Array array : arrays) {
+                    array.free();
+                }
+            }
+            return null;
+        });
+    }
+
+    /** The user's sensor's buckets in the window, or empty if the sensor isn't theirs. */
+    public Optional<Aggregate> sensor(long userId, long sensorId, Instant from, Instant to, Resolution resolution) {
+        Optional<Sensor> sensor = sensorRepository.findById(sensorId);
+        if (sensor.isEmpty() || sensor.get().getUserId() == null || sensor.get().getUserId() != userId) {
+            return Optional.empty();
+        }
+        return Optional.of(aggregate(from, to, resolution, "select bucket_start, samples, total, min_value, max_value"
+                + " from sensor_rollups where sensor_id = ? and resolution = ?"
+                + " and bucket_start >= ? and bucket_start < ? order by bucket_start", sensorId));
+    }
+
+    /** The buckets of all of the user's sensors of the type, over the window. */
+    public Aggregate type(long userId, String type, Instant from, Instant to, Resolution resolution) {
+        return aggregate(from, to, resolution, "select bucket_start, samples, total, min_value, max_value"
+                + " from sensor_type_rollups where user_id = ? and type = ? and resolution = ?"
+                + " and bucket_start >= ? and bucket_start < ? order by bucket_start", userId, type);
+    }
+
+    /** The finest resolution that splits the window into at most 1440 buckets. */
+    public static Resolution resolutionFor(Duration window) {
+        for (Resolution resolution : Resolution.values()) {
+            if (window.dividedBy(resolution.length()) <= 1440) {
+                return resolution;
+            }
+        }
+        return Resolution.DAY;
+    }
+
+    @Scheduled(initialDelayString = "${sensors.rollups.prune-interval:1h}",
+               fixedDelayString = "${sensors.rollups.prune-interval:1h}")
+    public void prune() {
+        try {
+            for (Resolution resolution : Resolution.values()) {
+                OffsetDateTime cutoff = OffsetDateTime.now(ZoneOffset.UTC).minus(retention.get(resolution));
+                int sensors = jdbcTemplate.update("delete from sensor_rollups where resolution = ? and bucket_start < ?",
+                        resolution.name(), cutoff);
+                int types = jdbcTemplate.update("delete from sensor_type_rollups where resolution = ? and bucket_start < ?",
+                        resolution.name(), cutoff);
+                log.debug("Pruned {} sensor and {} type rollups by the {} before {}", sensors, types, resolution, cutoff);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to prune sensor rollups: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the buckets starting in [from, to), with from rounded down to a bucket start; the last
+     * bucket may still be filling up. Throws IllegalArgumentException for an empty window or one
+     * of more than MAX_BUCKETS buckets.
+     */
+    private Aggregate aggregate(Instant from, Instant to, Resolution resolution, String sql, Object... key) {
+        long length = resolution.length().getSeconds();
+        Instant start = Instant.ofEpochSecond(Math.floorDiv(from.getEpochSecond(), length) * length);
+        if (!start.isBefore(to)) {
+            throw new IllegalArgumentException("from must be before to");
+        }
+        if (Duration.between(start, to).dividedBy(resolution.length()) >= MAX_BUCKETS) {
+            throw new IllegalArgumentException("The window spans more than " + MAX_BUCKETS + " "
+                    + resolution.name().toLowerCase() + " buckets");
+        }
+
+        Object[] args = Arrays.copyOf(key, key.length + 3);
+        args[key.length] = resolution.name();
+        args[key.length + 1] = start.atOffset(ZoneOffset.UTC);
+        args[key.length + 2] = to.atOffset(ZoneOffset.UTC);
+        List<Bucket> buckets = new ArrayList<>();
+        long samples = 0;
+        double total = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (Map<String, Object> row : jdbcTemplate.queryForList(sql, args)) {
+            Bucket bucket = bucket(row);
+            buckets.add(bucket);
+            samples += bucket.samples();
+            total += bucket.mean() * bucket.samples();
+            min = Math.min(min, bucket.min());
+            max = Math.max(max, bucket.max());
+        }
+        return samples == 0
+                ? new Aggregate(resolution, start, to, 0, null, null, null, buckets)
+                : new Aggregate(resolution, start, to, samples, total / samples, min, max, buckets);
+    }
+
+    private static Bucket bucket(Map<String, Object> row) {
+        long samples = ((Number) row.get("samples")).longValue();
+        double total = ((Number) row.get("total")).doubleValue();
+        return new Bucket(((Timestamp) row.get("bucket_start")).toInstant(), samples, total / samples,
+                ((Number) row.get("min_value")).doubleValue(), ((Number) row.get("max_value")).doubleValue());
+    }
+
+    /** Runs of consecutive readings of one sensor that fall in the same bucket. */
+    private static final class Runs {
+        private final List<Long> sensorIds = new ArrayList<>();
+        private final List<String> resolutions = new ArrayList<>();
+        private final List<Long> bucketMicros = new ArrayList<>();
+        private final List<Long> samples = new ArrayList<>();
+        private final List<Double> totals = new ArrayList<>();
+        private final List<Double> mins = new ArrayList<>();
+        private final List<Double> maxs = new ArrayList<>();
+
+        void summarise(SensorReadingBatch batch, Resolution resolution) {
+            long length = resolution.length().toNanos() / 1000;
+            int start = 0;
+            long bucket = Math.floorDiv(batch.micros[0], length) * length;
+            double total = 0;
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i <= batch.size; i++) {
+                long next = i < batch.size ? Math.floorDiv(batch.micros[i], length) * length : 0;
+                if (i == batch.size || next != bucket || batch.sensorIds[i] != batch.sensorIds[start]) {
+                    // Out-of-order readings can split a bucket into several runs; the upserts sum them
+                    sensorIds.add(batch.sensorIds[start]);
+                    resolutions.add(resolution.name());
+                    bucketMicros.add(bucket);
+                    samples.add((long) (i - start));
+                    totals.add(total);
+                    mins.add(min);
+                    maxs.add(max);
+                    if (i == batch.size) {
+                        break;
+                    }
+                    start = i;
+                    bucket = next;
+                    total = 0;
+                    min = Double.POSITIVE_INFINITY;
+                    max = Double.NEGATIVE_INFINITY;
+                }
+                double value = batch.values[i];
+                total += value;
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+        }
+
+        Array[] toArrays(Connection connection) throws SQLException {
+            return new Array[] {
+                connection.createArrayOf("bigint", sensorIds.toArray()),
+                connection.createArrayOf("text", resolutions.toArray()),
+                connection.createArrayOf("bigint", bucketMicros.toArray()),
+                connection.createArrayOf("bigint", samples.toArray()),
+                connection.createArrayOf("float8", totals.toArray()),
+                connection.createArrayOf("float8", mins.toArray()),
+                connection.createArrayOf("float8", maxs.toArray())
+            };
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.priacc.power.service;
+
+import com.priacc.power.model.Sensor;
+import com.priacc.power.model.SensorRule;
+import com.priacc.power.repo.SensorRuleRepository;
+import com.priacc.power.service.SensorAlertPublisher.AlertPayload;
+import com.priacc.power.service.SensorRuleSet.Key;
+import com.priacc.power.service.SensorRuleSet.TypeRules;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Checks sensor values against the users' threshold, rate-of-change and heartbeat rules as they
+ * arrive (readings, and values set through create/update) and raises an alert through
+ * {@link SensorAlertPublisher} when a sensor starts breaking a rule.
+ *
+ * Rules are compiled into a {@link SensorRuleSet}; each sensor keeps, in memory, its type and owner,
+ * its last value and how many of its type's rules it breaks, so evaluating a reading touches no
+ * database. An alert fires once when a rule starts being broken and again only after the sensor
+ * has been back within it. Changing a type's rules starts its sensors afresh, so rules they still
+ * break fire again. Heartbeats are checked every sensors.rules.heartbeat-check-interval against the
+ * time each sensor was last heard from.
+ */
+@Service
+public class SensorRuleEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(SensorRuleEngine.class);
+    private static final Set<String> PRIORITIES = Set.of("LOW", "MEDIUM", "HIGH", "CRITICAL");
+
+    private final SensorRuleRepository ruleRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final SensorAlertPublisher publisher;
+    private final Map<Long, SensorState> sensors = new ConcurrentHashMap<>();
+    private volatile SensorRuleSet ruleSet = SensorRuleSet.EMPTY;
+
+    /** What the engine knows about one sensor; guarded by itself. */
+    private static final class SensorState {
+        final long sensorId;
+        Key key;
+        TypeRules rules;
+        long lastMicros = Long.MIN_VALUE;
+        double lastValue;
+        long heardMicros;
+        int above;
+        int below;
+        int rate;
+        int silent;
+
+        SensorState(long sensorId) {
+            this.sensorId = sensorId;
+        }
+    }
+
+    public SensorRuleEngine(SensorRuleRepository ruleRepository, JdbcTemplate jdbcTemplate,
+                            SensorAlertPublisher publisher) {
+        this.ruleRepository = ruleRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.publisher = publisher;
+    }
+
+    @PostConstruct
+    void load() {
+        ruleSet = SensorRuleSet.compile(ruleRepository.findAll());
+        // Heartbeats count from startup: a sensor silent since before then is only reported once
+        // its limit has passed again
+        long now = SensorChunkCodec.micros(Instant.now());
+        jdbcTemplate.query("select id, user_id, type from sensors", (RowCallbackHandler) rs -> {
+            SensorState state = new SensorState(rs.getLong(1));
+            Long userId = rs.getObject(2, Long.class);
+            String type = rs.getString(3);
+            state.key = userId != null && type != null ? Key.of(userId, type) : null;
+            state.heardMicros = now;
+            sensors.put(state.sensorId, state);
+        });
+        log.info("Loaded {} sensor rules over {} sensors", ruleRepository.count(), sensors.size());
+    }
+
+    public List<SensorRule> rules(long userId) {
+        return ruleRepository.findByUserIdOrderById(userId);
+    }
+
+    /** Validates and saves a rule for the user; throws IllegalArgumentException if it's incomplete. */
+    public SensorRule create(long userId, SensorRule rule) {
+        if (rule.getType() == null || rule.getType().isBlank()) {
+            throw new IllegalArgumentException("type is required");
+        }
+        if (rule.getKind() == null) {
+            throw new IllegalArgumentException("kind must be THRESHOLD, RATE_OF_CHANGE or HEARTBEAT");
+        }
+        switch (rule.getKind()) {
+            case THRESHOLD -> {
+                if (rule.getMinValue() == null && rule.getMaxValue() == null) {
+                    throw new IllegalArgumentException("A threshold rule needs minValue, maxValue or both");
+                }
+                if (rule.getMinValue() != null && rule.getMaxValue() != null && rule.getMinValue() > rule.getMaxValue()) {
+                    throw new IllegalArgumentException("minValue must not be above maxValue");
+                }
+                rule.setMaxRate(null);
+                rule.setHeartbeatSeconds(null);
+            }
+            case RATE_OF_CHANGE -> {
+                if (rule.getMaxRate() == null || !(rule.getMaxRate() > 0) || rule.getMaxRate().isInfinite()) {
+                    throw new IllegalArgumentException("A rate-of-change rule needs a positive maxRate (per second)");
+                }
+                rule.setMinValue(null);
+                rule.setMaxValue(null);
+                rule.setHeartbeatSeconds(null);
+            }
+            case HEARTBEAT -> {
+                if (rule.getHeartbeatSeconds() == null || rule.getHeartbeatSeconds() <= 0) {
+                    throw new IllegalArgumentException("A heartbeat rule needs a positive heartbeatSeconds");
+                }
+                rule.setMinValue(null);
+                rule.setMaxValue(null);
+                rule.setMaxRate(null);
+            }
+        }
+        String priority = rule.getPriority() != null ? rule.getPriority().toUpperCase(Locale.ROOT) : "HIGH";
+        if (!PRIORITIES.contains(priority)) {
+            throw new IllegalArgumentException("priority must be LOW, MEDIUM, HIGH or CRITICAL");
+        }
+        rule.setPriority(priority);
+        rule.setId(null);
+        rule.setUserId(userId);
+        rule.setType(rule.getType().trim().toUpperCase(Locale.ROOT));
+        SensorRule saved = ruleRepository.save(rule);
+        recompile(userId, saved.getType());
+        return saved;
+    }
+
+    /** Deletes the user's rule; false if they have no such rule. */
+    public boolean delete(long userId, long ruleId) {
+        Optional<SensorRule> rule = ruleRepository.findById(ruleId);
+        if (rule.isEmpty() || !Long.valueOf(userId).equals(rule.get().getUserId())) {
+            return false;
+        }
+        ruleRepository.delete(rule.get());
+        recompile(userId, rule.get().getType());
+        return true;
+    }
+
+    /** Keeps a sensor's owner and type in step, and checks the value it was given, if any. */
+    public void sensorChanged(Sensor sensor) {
+        SensorState state = sensors.computeIfAbsent(sensor.getId(), SensorState::new);
+        synchronized (state) {
+            state.key = sensor.getUserId() != null && sensor.getType() != null
+                    ? Key.of(sensor.getUserId(), sensor.getType()) : null;
+            if (state.heardMicros == 0) {
+                state.heardMicros = SensorChunkCodec.micros(Instant.now());
+            }
+        }
+        if (sensor.getValue() != null) {
+            Instant time = sensor.getLastUpdated() != null ? sensor.getLastUpdated() : Instant.now();
+            evaluate(sensor.getId(), SensorChunkCodec.micros(time), sensor.getValue());
+        }
+    }
+
+    public void sensorDeleted(Long sensorId) {
+        sensors.remove(sensorId);
+    }
+
+    /** Checks one reading. Readings older than the sensor's last one checked are skipped. */
+    void evaluate(long sensorId, long micros, double value) {
+        SensorState state = sensors.get(sensorId);
+        if (state == null) {
+            return;
+        }
+        synchronized (state) {
+            TypeRules rules = current(state);
+            state.heardMicros = System.currentTimeMillis() * 1000;
+            state.silent = 0;
+            if (micros < state.lastMicros) {
+                return;
+            }
+            if (rules != null) {
+                int above = rules.above(value);
+                for (int i = state.above; i < above; i++) {
+                    SensorRule rule = rules.above[i];
+                    fire(state, rule, micros, "above maximum",
+                            () -> "read " + value + ", above the maximum of " + rule.getMaxValue());
+                }
+                state.above = above;
+
+                int below = rules.below(value);
+                for (int i = state.below; i < below; i++) {
+                    SensorRule rule = rules.below[i];
+                    fire(state, rule, micros, "below minimum",
+                            () -> "read " + value + ", below the minimum of " + rule.getMinValue());
+                }
+                state.below = below;
+
+                if (state.lastMicros != Long.MIN_VALUE && micros > state.lastMicros) {
+                    double perSecond = Math.abs(value - state.lastValue) / ((micros - state.lastMicros) / 1e6);
+                    int rate = rules.rate(perSecond);
+                    for (int i = state.rate; i < rate; i++) {
+                        SensorRule rule = rules.rate[i];
+                        fire(state, rule, micros, "changing too fast",
+                                () -> String.format(Locale.ROOT, "changed by %.3f per second, faster than the limit of %s",
+                                        perSecond, rule.getMaxRate()));
+                    }
+                    state.rate = rate;
+                }
+            }
+            state.lastMicros = micros;
+            state.lastValue = value;
+        }
+    }
+
+    @Scheduled(initialDelayString = "${sensors.rules.heartbeat-check-interval:10s}",
+               fixedDelayString = "${sensors.rules.heartbeat-check-interval:10s}")
+    public void checkHeartbeats() {
+        long now = SensorChunkCodec.micros(Instant.now());
+        for (SensorState state : sensors.values()) {
+            synchronized (state) {
+                TypeRules rules = current(state);
+                if (rules == null || !rules.hasHeartbeat()) {
+                    continue;
+                }
+                long silence = now - state.heardMicros;
+                int silent = rules.silent(silence);
+                for (int i = state.silent; i < silent; i++) {
+                    SensorRule rule = rules.heartbeat[i];
+                    fire(state, rule, now, "heartbeat missing", () -> "has not reported for " + silence / 1_000_000
+                            + "s, longer than the limit of " + rule.getHeartbeatSeconds() + "s");
+                }
+                state.silent = silent;
+            }
+        }
+    }
+
+    /** The sensor's rules, starting its counts afresh if they changed since it was last checked. */
+    private TypeRules current(SensorState state) {
+        TypeRules rules = ruleSet.get(state.key);
+        if (rules != state.rules) {
+            state.rules = rules;
+            state.above = 0;
+            state.below = 0;
+            state.rate = 0;
+            state.silent = 0;
+        }
+        return rules;
+    }
+
+    private void fire(SensorState state, SensorRule rule, long micros, String title, Supplier<String> detail) {
+        Key key = state.key;
+        publisher.publish(state.sensorId + ":" + rule.getId() + ":" + title, () -> new AlertPayload(
+                "Sensor " + state.sensorId + " " + title,
+                "Sensor " + state.sensorId + " (" + key.type() + ") " + detail.get() + " (rule " + rule.getId() + ")",
+                rule.getPriority(), SensorChunkCodec.instant(micros), key.userId()));
+    }
+
+    private synchronized void recompile(long userId, String type) {
+        Key key = Key.of(userId, type);
+        ruleSet = ruleSet.with(key, ruleRepository.findByUserIdAndTypeIgnoreCase(userId, type));
+    }
+}
@@ -0,0 +1,135 @@
+package com.priacc.power.service;
+
+import com.priacc.power.model.SensorRule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * The rules of every user and sensor type, compiled for matching one reading at a time.
+ *
+ * Per user and type, each kind of bound is kept sorted so that the rules a value breaks are always
+ * a prefix: maximums ascending, minimums descending, rate limits and heartbeat timeouts ascending.
+ * Matching a reading is then a binary search per kind, and a sensor's state is just how long a
+ * prefix it currently breaks, so the cost per reading grows with log(rules), not with rules.
+ */
+final class SensorRuleSet {
+
+    record Key(long userId, String type) {
+        static Key of(long userId, String type) {
+            return new Key(userId, type.toUpperCase(Locale.ROOT));
+        }
+    }
+
+    /** One user's rules for one sensor type. */
+    static final class TypeRules {
+        final SensorRule[] above;
+        final SensorRule[] below;
+        final SensorRule[] rate;
+        final SensorRule[] heartbeat;
+        private final double[] maxValues;
+        private final double[] negatedMinValues;
+        private final double[] maxRates;
+        private final double[] heartbeatMicros;
+
+        private TypeRules(List<SensorRule> rules) {
+            above = sorted(rules, rule -> rule.getKind() == SensorRule.Kind.THRESHOLD && rule.getMaxValue() != null,
+                    Comparator.comparingDouble(SensorRule::getMaxValue));
+            below = sorted(rules, rule -> rule.getKind() == SensorRule.Kind.THRESHOLD && rule.getMinValue() != null,
+                    Comparator.comparingDouble(SensorRule::getMinValue).reversed());
+            rate = sorted(rules, rule -> rule.getKind() == SensorRule.Kind.RATE_OF_CHANGE,
+                    Comparator.comparingDouble(SensorRule::getMaxRate));
+            heartbeat = sorted(rules, rule -> rule.getKind() == SensorRule.Kind.HEARTBEAT,
+                    Comparator.comparingLong(SensorRule::getHeartbeatSeconds));
+            maxValues = Arrays.stream(above).mapToDouble(SensorRule::getMaxValue).toArray();
+            negatedMinValues = Arrays.stream(below).mapToDouble(rule -> -rule.getMinValue()).toArray();
+            maxRates = Arrays.stream(rate).mapToDouble(SensorRule::getMaxRate).toArray();
+            heartbeatMicros = Arrays.stream(heartbeat).mapToDouble(rule -> rule.getHeartbeatSeconds() * 1e6).toArray();
+        }
+
+        /** How many of {@link #above} the value breaks. */
+        int above(double value) {
+            return countBelow(maxValues, value);
+        }
+
+        /** How many of {@link #below} the value breaks. */
+        int below(double value) {
+            return countBelow(negatedMinValues, -value);
+        }
+
+        /** How many of {@link #rate} a change of this much per second breaks. */
+        int rate(double perSecond) {
+            return countBelow(maxRates, perSecond);
+        }
+
+        /** How many of {@link #heartbeat} this many microseconds of silence break. */
+        int silent(long micros) {
+            return countBelow(heartbeatMicros, micros);
+        }
+
+        boolean hasHeartbeat() {
+            return heartbeat.length > 0;
+        }
+
+        private static SensorRule[] sorted(List<SensorRule> rules, Predicate<SensorRule> kind,
+                                           Comparator<SensorRule> order) {
+            return rules.stream().filter(kind).sorted(order.thenComparing(SensorRule::getId)).toArray(SensorRule[]::new);
+        }
+
+        /** The number of elements of the ascending array strictly less than x. */
+        private static int countBelow(double[] sorted, double x) {
+            int low = 0;
+            int high = sorted.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (sorted[middle] < x) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    static final SensorRuleSet EMPTY = new SensorRuleSet(Map.of());
+
+    private final Map<Key, TypeRules> byType;
+
+    private SensorRuleSet(Map<Key, TypeRules> byType) {
+        this.byType = byType;
+    }
+
+    static SensorRuleSet compile(Collection<SensorRule> rules) {
+        Map<Key, List<SensorRule>> grouped = new HashMap<>();
+        for (SensorRule rule : rules) {
+            grouped.computeIfAbsent(Key.of(rule.getUserId(), rule.getType()), key -> new ArrayList<>()).add(rule);
+        }
+        Map<Key, TypeRules> byType = new HashMap<>();
+        grouped.forEach((key, typeRules) -> byType.put(key, new TypeRules(typeRules)));
+        return new SensorRuleSet(byType);
+    }
+
+    /** A copy with the rules of one user and type replaced; the other types' rules are shared. */
+    SensorRuleSet with(Key key, List<SensorRule> rules) {
+        Map<Key, TypeRules> byType = new HashMap<>(this.byType);
+        if (rules.isEmpty()) {
+            byType.remove(key);
+        } else {
+            byType.put(key, new TypeRules(rules));
+        }
+        return new SensorRuleSet(byType);
+    }
+
+    /** The rules for the user's sensors of the type, or null if there are none. */
+    TypeRules get(Key key) {
+        return key != null ? byType.get(key) : null;
+    }
+}
@@ -1,24 +1,102 @@
 package com.priacc.power.service;
 
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 import com.priacc.power.model.Sensor;
 import com.priacc.power.repo.SensorRepository;
 
 @Service
 public class SensorService {
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int MAX_PAGE_SIZE = 500;
+
     private final SensorRepository repo;
-    public SensorService(SensorRepository repo) { this.repo = repo; }
+    private final EntityManager entityManager;
+    private final SensorReadingService readingService;
+    private final SensorRuleEngine ruleEngine;
+
+    public SensorService(SensorRepository repo, EntityManager entityManager, SensorReadingService readingService,
+                         SensorRuleEngine ruleEngine) {
+        this.repo = repo;
+        this.entityManager = entityManager;
+        this.readingService = readingService;
+        this.ruleEngine = ruleEngine;
+    }
+
+    public Sensor create(Sensor e) {
+        Sensor saved = repo.save(e);
+        ruleEngine.sensorChanged(saved);
+        return saved;
+    }
+
+    /**
+     * One page of sensors, newest first. Pages are keyset-based: pass the id of the last sensor of
+     * the previous page as cursor, so every page is an index range scan on (user_id, id).
+     */
+    public Window<Sensor> list(Long userId, String type, String status, Instant from, Instant to, Long cursor, int limit) {
+        Specification<Sensor> spec = (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            if (userId != null) {
+                predicates.add(cb.equal(root.get("userId"), userId));
+            }
+            if (type != null) {
+                predicates.add(cb.equal(cb.upper(root.get("type")), type.toUpperCase()));
+            }
+            if (status != null) {
+                predicates.add(cb.equal(cb.upper(root.get("status")), status.toUpperCase()));
+            }
+            if (from != null) {
+                predicates.add(cb.greaterThanOrEqualTo(root.get("lastUpdated"), from));
+            }
+            if (to != null) {
+                predicates.add(cb.lessThan(root.get("lastUpdated"), to));
+            }
+            return cb.and(predicates.toArray(Predicate[]::new));
+        };
+        ScrollPosition position = cursor != null ? ScrollPosition.forward(Map.of("id", cursor)) : ScrollPosition.keyset();
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        return repo.findBy(spec, q -> q.sortBy(Sort.by(Sort.Direction.DESC, "id")).limit(pageSize).scroll(position));
+    }
 
-    public Sensor create(Sensor e) { return repo.save(e); }
-    public List<Sensor> list(Long userId) { 
-        if (userId != null) {
-            return repo.findByUserId(userId);
+    /**
+     * Hands every sensor of the user to the sink in id order, reading through a database cursor and
+     * detaching each row once it's been written so the persistence context stays empty.
+     */
+    @Transactional(readOnly = true)
+    public void export(Long userId, Consumer<Sensor> sink) {
+        try (Stream<Sensor> rows = repo.streamByUserIdOrderById(userId)) {
+            rows.forEach(row -> {
+                sink.accept(row);
+                entityManager.detach(row);
+            });
         }
-        return repo.findAll(); 
     }
+
     public Optional<Sensor> get(Long id) { return repo.findById(id); }
-    public Sensor update(Sensor e) { return repo.save(e); }
-    public void delete(Long id) { repo.deleteById(id); }
+
+    public Sensor update(Sensor e) {
+        Sensor saved = repo.save(e);
+        readingService.sensorUpdated(saved);
+        ruleEngine.sensorChanged(saved);
+        return saved;
+    }
+
+    public void delete(Long id) {
+        repo.deleteById(id);
+        readingService.sensorDeleted(id);
+        ruleEngine.sensorDeleted(id);
+    }
 }
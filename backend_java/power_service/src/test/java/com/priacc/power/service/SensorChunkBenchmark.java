@@ -0,0 +1,164 @@
+package com.priacc.power.service;
+
+import org.postgresql.PGConnection;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Random;
+
+/**
+ * Compares sensor_reading_chunks with the row-per-reading sensor_readings layout: bytes per point
+ * on disk, and how fast one sensor's range scan reads points back. Not a unit test; run it by hand
+ * against a database the service has created its tables in:
+ * <pre>
+ * java -cp target/test-classes:target/classes:$(cat cp.txt) com.priacc.power.service.SensorChunkBenchmark \
+ *     [noisy|smooth] [jdbc-url] [user] [password]
+ * </pre>
+ * (cp.txt from mvn dependency:build-classpath -Dmdep.outputFile=cp.txt). It loads 100 sensors
+ * reporting every second with millisecond jitter for 6 hours into copies of both tables, made
+ * and dropped by the run. Noisy values are a random walk with 2 decimals; smooth ones mostly
+ * repeat the previous value.
+ */
+public class SensorChunkBenchmark {
+
+    private static final int SENSORS = 100;
+    private static final int SECONDS = 6 * 3600;
+    private static final int CHUNK_POINTS = 3600;
+    private static final long WINDOW_MICROS = 3_600_000_000L;
+
+    public static void main(String[] args) throws SQLException, IOException {
+        boolean smooth = args.length > 0 && args[0].equals("smooth");
+        String url = args.length > 1 ? args[1] : "jdbc:postgresql://localhost:5432/urbanops";
+        String user = args.length > 2 ? args[2] : "postgres";
+        String password = args.length > 3 ? args[3] : "postgres";
+
+        try (Connection connection = DriverManager.getConnection(url, user, password);
+             Statement statement = connection.createStatement()) {
+            statement.execute("drop table if exists bench_rows, bench_chunks");
+            statement.execute("create table bench_rows (like sensor_readings including all)");
+            statement.execute("create table bench_chunks (like sensor_reading_chunks including all)");
+            try {
+                long start = 1_790_000_000_000_000L / WINDOW_MICROS * WINDOW_MICROS;
+                long encodedBytes = load(connection, start, smooth);
+                statement.execute("vacuum analyze bench_rows");
+                statement.execute("vacuum analyze bench_chunks");
+
+                double points = (double) SENSORS * SECONDS;
+                try (ResultSet sizes = statement.executeQuery(
+                        "select pg_total_relation_size('bench_rows'), pg_total_relation_size('bench_chunks')")) {
+                    sizes.next();
+                    System.out.printf("%s values, %d points: encoded %.2f B/pt; on disk rows %.1f B/pt, chunks %.1f B/pt%n",
+                            smooth ? "smooth" : "noisy", (long) points, encodedBytes / points,
+                            sizes.getLong(1) / points, sizes.getLong(2) / points);
+                }
+                for (int round = 0; round < 3; round++) {
+                    scan(connection, start);
+                }
+            } finally {
+                statement.execute("drop table bench_rows, bench_chunks");
+            }
+        }
+    }
+
+    /** Loads the readings into both tables, and returns the encoded size of the chunks. */
+    private static long load(Connection connection, long start, boolean smooth) throws SQLException, IOException {
+        Random random = new Random(1);
+        long[] micros = new long[SECONDS];
+        double[] values = new double[SECONDS];
+        StringBuilder csv = new StringBuilder();
+        long encodedBytes = 0;
+        try (PreparedStatement insert = connection.prepareStatement(
+                "insert into bench_chunks (sensor_id, window_start, first_at, last_at, points, data)"
+                + " values (?, ?, ?, ?, ?, ?)")) {
+            for (int sensor = 0; sensor < SENSORS; sensor++) {
+                double value = 230;
+                for (int i = 0; i < SECONDS; i++) {
+                    micros[i] = start + i * 1_000_000L + random.nextInt(20) * 1000L;
+                    if (smooth) {
+                        value = random.nextInt(10) == 0 ? value + 0.5 * (random.nextInt(3) - 1) : value;
+                    } else {
+                        value = Math.round((value + random.nextDouble() - 0.5) * 100) / 100.0;
+                    }
+                    values[i] = value;
+                    csv.append(sensor).append(',').append(time(micros[i])).append(',').append(value).append('\n');
+                }
+                for (int from = 0; from < SECONDS; from += CHUNK_POINTS) {
+                    int to = from + CHUNK_POINTS;
+                    byte[] data = SensorChunkCodec.encode(micros, values, from, to);
+                    encodedBytes += data.length;
+                    insert.setLong(1, sensor);
+                    insert.setObject(2, time(start + (long) (from / CHUNK_POINTS) * WINDOW_MICROS));
+                    insert.setObject(3, time(micros[from]));
+                    insert.setObject(4, time(micros[to - 1]));
+                    insert.setInt(5, to - from);
+                    insert.setBytes(6, data);
+                    insert.addBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+        connection.unwrap(PGConnection.class).getCopyAPI().copyIn(
+                "copy bench_rows (sensor_id, recorded_at, value) from stdin (format csv)", new StringReader(csv.toString()));
+        return encodedBytes;
+    }
+
+    /** Reads every sensor's 6 hours back, from each layout, and prints the points per second. */
+    private static void scan(Connection connection, long start) throws SQLException {
+        OffsetDateTime from = time(start);
+        OffsetDateTime to = from.plusHours(6);
+        double[] sum = {0};
+        long[] points = {0};
+
+        long began = System.nanoTime();
+        try (PreparedStatement rows = connection.prepareStatement("select recorded_at, value from bench_rows"
+                + " where sensor_id = ? and recorded_at >= ? and recorded_at < ? order by recorded_at")) {
+            for (int sensor = 0; sensor < SENSORS; sensor++) {
+                rows.setLong(1, sensor);
+                rows.setObject(2, from);
+                rows.setObject(3, to);
+                try (ResultSet result = rows.executeQuery()) {
+                    while (result.next()) {
+                        sum[0] += result.getObject(1, OffsetDateTime.class).getSecond() + result.getDouble(2);
+                        points[0]++;
+                    }
+                }
+            }
+        }
+        long rowPoints = points[0];
+        double rowRate = rowPoints / ((System.nanoTime() - began) / 1e9);
+
+        points[0] = 0;
+        began = System.nanoTime();
+        try (PreparedStatement chunks = connection.prepareStatement("select data from bench_chunks"
+                + " where sensor_id = ? and window_start < ? and last_at >= ? order by window_start")) {
+            for (int sensor = 0; sensor < SENSORS; sensor++) {
+                chunks.setLong(1, sensor);
+                chunks.setObject(2, to);
+                chunks.setObject(3, from);
+                try (ResultSet result = chunks.executeQuery()) {
+                    while (result.next()) {
+                        SensorChunkCodec.decode(result.getBytes(1), (micros, value) -> {
+                            sum[0] += micros + value;
+                            points[0]++;
+                        });
+                    }
+                }
+            }
+        }
+        double chunkRate = points[0] / ((System.nanoTime() - began) / 1e9);
+        System.out.printf("scan of %d points: rows %.0f pts/s, chunks %.0f pts/s (%.1fx)%n",
+                rowPoints, rowRate, chunkRate, chunkRate / rowRate);
+    }
+
+    private static OffsetDateTime time(long micros) {
+        return SensorChunkCodec.instant(micros).atOffset(ZoneOffset.UTC);
+    }
+}
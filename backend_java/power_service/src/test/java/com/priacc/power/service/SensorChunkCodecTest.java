@@ -0,0 +1,190 @@
+package com.priacc.power.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SensorChunkCodecTest {
+
+    private static final long START = 1_790_000_000_000_000L;
+
+    @Test
+    void emptyAndSinglePoint() {
+        assertRoundTrip(new long[0], new double[0]);
+        assertRoundTrip(new long[] {START}, new double[] {230.5});
+    }
+
+    @Test
+    void deltaOfDeltaBucketEdges() {
+        long[] edges = {
+            0,
+            -(1L << 11), (1L << 11) - 1,                    // largest in the 12-bit bucket
+            -(1L << 11) - 1, 1L << 11,                      // smallest in the 20-bit bucket
+            -(1L << 19), (1L << 19) - 1,
+            -(1L << 19) - 1, 1L << 19,                      // smallest in the 32-bit bucket
+            Integer.MIN_VALUE, Integer.MAX_VALUE,
+            Integer.MIN_VALUE - 1L, Integer.MAX_VALUE + 1L, // smallest in the 64-bit bucket
+            1L << 50, -(1L << 50),
+        };
+        // Each edge is followed by its negation, so the delta returns to the base one
+        List<Long> dods = new ArrayList<>();
+        for (long edge : edges) {
+            dods.add(edge);
+            dods.add(-edge);
+        }
+        long[] micros = new long[dods.size() + 2];
+        micros[0] = START;
+        long delta = 1L << 52;
+        micros[1] = micros[0] + delta;
+        for (int i = 0; i < dods.size(); i++) {
+            delta += dods.get(i);
+            micros[i + 2] = micros[i + 1] + delta;
+        }
+        assertRoundTrip(micros, constant(micros.length, 1.0));
+    }
+
+    @Test
+    void sixtyFourBitDeltaOfDelta() {
+        // A gap of days between steady 1s readings
+        long[] micros = {START, START + 1_000_000, START + 1_000_000 + (1L << 40), START + 2_000_000 + (1L << 40),
+                START + 3_000_000 + (1L << 40)};
+        assertRoundTrip(micros, constant(micros.length, 42.0));
+    }
+
+    @Test
+    void xorWindows() {
+        double[] values = {
+            Double.longBitsToDouble(0x0000000000000000L),
+            Double.longBitsToDouble(0x0010000000000000L), // new window: 11 leading, 52 trailing zeros
+            Double.longBitsToDouble(0x0010000000100001L), // new window: 43 leading zeros, stored as 31
+            Double.longBitsToDouble(0x0010000000100002L), // reuses the capped window
+            Double.longBitsToDouble(0x8010000000100003L), // new window: all 64 bits meaningful
+            Double.longBitsToDouble(0x0010000000100003L), // reuses the 64-bit window
+            Double.longBitsToDouble(0x7fffffffffffffffL),
+            Double.longBitsToDouble(0xffffffffffffffffL),
+        };
+        assertRoundTrip(steady(values.length), values);
+    }
+
+    @Test
+    void identicalValuesAndSpecialBitPatterns() {
+        double[] values = {
+            230.0, 230.0, 230.0,
+            Double.longBitsToDouble(0x7ff8000000000000L),  // canonical NaN
+            Double.longBitsToDouble(0x7ff8000000000000L),
+            Double.longBitsToDouble(0x7ff0000000000001L),  // NaN payloads must survive
+            Double.longBitsToDouble(0xfff8000000000abcL),
+            0.0, -0.0, -0.0,
+            Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+            Double.MIN_VALUE, Double.MAX_VALUE,
+        };
+        assertRoundTrip(steady(values.length), values);
+    }
+
+    @Test
+    void jitteredRandomWalk() {
+        Random random = new Random(7);
+        int n = 5000;
+        long[] micros = new long[n];
+        double[] values = new double[n];
+        double value = 230;
+        for (int i = 0; i < n; i++) {
+            micros[i] = START + i * 1_000_000L + random.nextInt(20_000);
+            value = Math.round((value + random.nextDouble() - 0.5) * 100) / 100.0;
+            values[i] = value;
+        }
+        assertRoundTrip(micros, values);
+    }
+
+    @Test
+    void encodesASubrange() {
+        long[] micros = steady(10);
+        double[] values = new double[10];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i;
+        }
+        List<Long> times = new ArrayList<>();
+        List<Double> decoded = new ArrayList<>();
+        SensorChunkCodec.decode(SensorChunkCodec.encode(micros, values, 3, 7), (time, value) -> {
+            times.add(time);
+            decoded.add(value);
+        });
+        assertEquals(List.of(micros[3], micros[4], micros[5], micros[6]), times);
+        assertEquals(List.of(3.0, 4.0, 5.0, 6.0), decoded);
+    }
+
+    @Test
+    void mergesLateReadingsIntoAnExistingChunk() {
+        long sensorId = 17;
+        long[] micros = {START + 10, START + 20, START + 30};
+        byte[] existing = SensorChunkCodec.encode(micros, new double[] {1, 2, 3}, 0, micros.length);
+
+        // Sorted, as taken from sensor_readings: before, between and after the chunk's points
+        SensorReadingBatch late = new SensorReadingBatch();
+        late.add(99, START, -1);        // another sensor's reading, outside [from, to)
+        late.add(sensorId, START + 5, 0.5);
+        late.add(sensorId, START + 25, 2.5);
+        late.add(sensorId, START + 35, 3.5);
+        late.add(sensorId, START + 36, 3.6);
+
+        SensorReadingBatch merged = SensorReadingCompactor.merge(sensorId, existing, late, 1, late.size);
+        long[] expectedMicros = {START + 5, START + 10, START + 20, START + 25, START + 30, START + 35, START + 36};
+        double[] expectedValues = {0.5, 1, 2, 2.5, 3, 3.5, 3.6};
+        assertEquals(expectedMicros.length, merged.size);
+        for (int i = 0; i < merged.size; i++) {
+            assertEquals(sensorId, merged.sensorIds[i]);
+            assertEquals(expectedMicros[i], merged.micros[i]);
+            assertEquals(expectedValues[i], merged.values[i]);
+        }
+
+        // And merging again into the merged chunk
+        byte[] chunk = SensorChunkCodec.encode(merged.micros, merged.values, 0, merged.size);
+        SensorReadingBatch later = new SensorReadingBatch();
+        later.add(sensorId, START + 1, 0.1);
+        SensorReadingBatch again = SensorReadingCompactor.merge(sensorId, chunk, later, 0, later.size);
+        assertEquals(merged.size + 1, again.size);
+        assertEquals(START + 1, again.micros[0]);
+        assertRoundTrip(Arrays.copyOf(again.micros, again.size), Arrays.copyOf(again.values, again.size));
+    }
+
+    private static void assertRoundTrip(long[] micros, double[] values) {
+        byte[] data = SensorChunkCodec.encode(micros, values, 0, micros.length);
+        assertEquals(micros.length, SensorChunkCodec.count(data));
+
+        long[] times = new long[micros.length];
+        long[] bits = new long[values.length];
+        int[] n = {0};
+        SensorChunkCodec.decode(data, (time, value) -> {
+            times[n[0]] = time;
+            bits[n[0]] = Double.doubleToRawLongBits(value);
+            n[0]++;
+        });
+        assertEquals(micros.length, n[0]);
+        assertArrayEquals(micros, times);
+        long[] expected = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            expected[i] = Double.doubleToRawLongBits(values[i]);
+        }
+        assertArrayEquals(expected, bits);
+    }
+
+    private static long[] steady(int n) {
+        long[] micros = new long[n];
+        for (int i = 0; i < n; i++) {
+            micros[i] = START + i * 1_000_000L;
+        }
+        return micros;
+    }
+
+    private static double[] constant(int n, double value) {
+        double[] values = new double[n];
+        Arrays.fill(values, value);
+        return values;
+    }
+}
@@ -0,0 +1,98 @@
+package com.priacc.common.security;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+
+/**
+ * Maps usernames to auth-service user ids for requests whose token carries no uid claim.
+ *
+ * Lookups are cached with a TTL and a size bound, unknown usernames are cached briefly as
+ * negative entries, and concurrent misses for the same username share one upstream call.
+ * Hit/miss counts and load latency are published under the "auth.user-id" cache metrics.
+ */
+@Component
+public class UserIdResolver {
+
+    private static final Logger log = LoggerFactory.getLogger(UserIdResolver.class);
+
+    private final RestTemplate restTemplate;
+    private final String authServiceUrl;
+    private final AsyncLoadingCache<String, Optional<Long>> cache;
+
+    public UserIdResolver(
+            RestTemplate restTemplate,
+            MeterRegistry meterRegistry,
+            @Value("${auth.service.url:http://auth-service:8090}") String authServiceUrl,
+            @Value("${auth.user-id-cache.ttl:10m}") Duration ttl,
+            @Value("${auth.user-id-cache.negative-ttl:30s}") Duration negativeTtl,
+            @Value("${auth.user-id-cache.max-size:10000}") long maxSize) {
+        this.restTemplate = restTemplate;
+        this.authServiceUrl = authServiceUrl;
+        // Failed loads are not cached, so an auth-service outage is retried on the next request
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(Expiry.creating((String username, Optional<Long> userId) ->
+                        userId.isPresent() ? ttl : negativeTtl))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .recordStats()
+                .buildAsync(this::load);
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "auth.user-id");
+    }
+
+    /**
+     * Returns the trusted user id forwarded by the gateway when present, otherwise the
+     * cached auth-service lookup for the username. Returns null when neither resolves.
+     */
+    public Long resolve(Long trustedUserId, String username) {
+        if (trustedUserId != null) {
+            return trustedUserId;
+        }
+        if (username == null || username.isBlank()) {
+            log.debug("X-Username header missing");
+            return null;
+        }
+
+        try {
+            return cache.get(username).get().orElse(null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            log.warn("Failed to get userId from auth service for {}: {}", username, e.getCause().getMessage());
+            return null;
+        }
+    }
+
+    private Optional<Long> load(String username) {
+        try {
+            ResponseEntity<Map> response = restTemplate.getForEntity(
+                    authServiceUrl + "/auth/user-id?username={username}",
+                    Map.class,
+                    username
+            );
+            if (response.getBody() != null && response.getBody().containsKey("userId")) {
+                return Optional.of(Long.valueOf(response.getBody().get("userId").toString()));
+            }
+            log.warn("Failed to resolve userId for username: {}", username);
+        } catch (HttpClientErrorException.NotFound e) {
+            log.debug("Unknown username: {}", username);
+        }
+        return Optional.empty();
+    }
+}
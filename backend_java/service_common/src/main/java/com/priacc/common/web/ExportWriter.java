@@ -0,0 +1,108 @@
+package com.priacc.common.web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Streams export rows to the response as they are read, as NDJSON (one JSON object per line) or
+ * CSV with a header row. Nothing is collected, so memory use doesn't grow with the row count.
+ */
+public final class ExportWriter {
+    public enum Format {
+        NDJSON(MediaType.parseMediaType("application/x-ndjson"), "ndjson"),
+        CSV(MediaType.parseMediaType("text/csv;charset=UTF-8"), "csv");
+
+        final MediaType mediaType;
+        final String extension;
+
+        Format(MediaType mediaType, String extension) {
+            this.mediaType = mediaType;
+            this.extension = extension;
+        }
+
+        /** The format named by the request parameter, or null if unknown. */
+        public static Format parse(String value) {
+            try {
+                return valueOf(value.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+
+    public record Column<T>(String name, Function<T, Object> value) {}
+
+    private ExportWriter() {}
+
+    /**
+     * Builds the export response. The source is only run once the servlet container starts
+     * writing, and hands every row to the sink it is given.
+     */
+    public static <T> ResponseEntity<StreamingResponseBody> response(Format format, String name, ObjectMapper objectMapper,
+                                                                     List<Column<T>> columns, Consumer<Consumer<T>> source) {
+        StreamingResponseBody body = outputStream -> {
+            OutputStream out = new BufferedOutputStream(outputStream, 16 * 1024);
+            if (format == Format.CSV) {
+                write(out, csvLine(columns.stream().map(Column::name).toList()));
+            }
+            source.accept(row -> write(out, format == Format.CSV
+                    ? csvLine(columns.stream().map(column -> column.value().apply(row)).toList())
+                    : json(objectMapper, row)));
+            out.flush();
+        };
+        return ResponseEntity.ok()
+                .contentType(format.mediaType)
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(name + "." + format.extension).build().toString())
+                .body(body);
+    }
+
+    private static byte[] json(ObjectMapper objectMapper, Object row) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(row);
+            byte[] line = new byte[json.length + 1];
+            System.arraycopy(json, 0, line, 0, json.length);
+            line[json.length] = '\n';
+            return line;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] csvLine(List<?> values) {
+        StringBuilder line = new StringBuilder();
+        for (Object value : values) {
+            if (!line.isEmpty()) {
+                line.append(',');
+            }
+            String text = value == null ? "" : value.toString();
+            if (text.indexOf(',') >= 0 || text.indexOf('"') >= 0 || text.indexOf('\n') >= 0 || text.indexOf('\r') >= 0) {
+                line.append('"').append(text.replace("\"", "\"\"")).append('"');
+            } else {
+                line.append(text);
+            }
+        }
+        return line.append("\r\n").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void write(OutputStream out, byte[] bytes) {
+        try {
+            out.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
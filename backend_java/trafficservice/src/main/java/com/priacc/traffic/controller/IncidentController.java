@@ -1,24 +1,42 @@
 package com.priacc.traffic.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.data.domain.Window;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.beans.factory.annotation.Autowired;
 import java.net.URI;
 import java.util.List;
-import java.util.Map;
+import com.priacc.common.security.UserIdResolver;
+import com.priacc.common.web.ExportWriter;
 import com.priacc.traffic.model.Incident;
 import com.priacc.traffic.service.IncidentService;
 
 @RestController
 @RequestMapping("/incidents")
 public class IncidentController {
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private static final List<ExportWriter.Column<Incident>> EXPORT_COLUMNS = List.of(
+        new ExportWriter.Column<>("id", Incident::getId),
+        new ExportWriter.Column<>("location", Incident::getLocation),
+        new ExportWriter.Column<>("description", Incident::getDescription),
+        new ExportWriter.Column<>("severity", Incident::getSeverity),
+        new ExportWriter.Column<>("status", Incident::getStatus),
+        new ExportWriter.Column<>("userId", Incident::getUserId)
+    );
+
     private final IncidentService service;
+    private final ObjectMapper objectMapper;
     
     @Autowired
-    private RestTemplate restTemplate;
+    private UserIdResolver userIdResolver;
     
-    public IncidentController(IncidentService service) { this.service = service; }
+    public IncidentController(IncidentService service, ObjectMapper objectMapper) {
+        this.service = service;
+        this.objectMapper = objectMapper;
+    }
 
     @PostMapping
     public ResponseEntity<Incident> create(@RequestBody Incident dto) {
@@ -32,31 +50,43 @@ public class IncidentController {
     }
 
     @GetMapping("/list")
-    public ResponseEntity<List<Incident>> list(@RequestHeader(value = "X-Username", required = false) String username) {
-        if (username == null) {
-            System.err.println("X-Username header missing");
+    public ResponseEntity<List<Incident>> list(
+            @RequestHeader(value = "X-Username", required = false) String username,
+            @RequestHeader(value = "X-User-Id", required = false) Long userIdHeader,
+            @RequestParam(required = false) String severity,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) Long cursor,
+            @RequestParam(defaultValue = "" + IncidentService.DEFAULT_PAGE_SIZE) int limit) {
+        Long userId = userIdResolver.resolve(userIdHeader, username);
+        if (userId == null) {
             return ResponseEntity.status(401).build();
         }
 
-        Long userId = null;
-        try {
-            ResponseEntity<Map> response = restTemplate.getForEntity(
-                "http://auth-service:8090/auth/user-id?username=" + username, 
-                Map.class
-            );
-            if (response.getBody() != null && response.getBody().containsKey("userId")) {
-                userId = Long.valueOf(response.getBody().get("userId").toString());
-            }
-        } catch (Exception e) {
-            System.err.println("Failed to get userId from auth service: " + e.getMessage());
-            return ResponseEntity.status(401).build(); // Fail closed
+        Window<Incident> page = service.list(userId, severity, status, cursor, limit);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.hasNext()) {
+            response.header(NEXT_CURSOR_HEADER, String.valueOf(page.getContent().get(page.size() - 1).getId()));
         }
+        return response.body(page.getContent());
+    }
 
+    /** All of the user's incidents, oldest first, streamed as NDJSON (default) or CSV. */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(
+            @RequestHeader(value = "X-Username", required = false) String username,
+            @RequestHeader(value = "X-User-Id", required = false) Long userIdHeader,
+            @RequestParam(defaultValue = "ndjson") String format) {
+        Long userId = userIdResolver.resolve(userIdHeader, username);
         if (userId == null) {
-             return ResponseEntity.status(401).build();
+            return ResponseEntity.status(401).build();
+        }
+        ExportWriter.Format exportFormat = ExportWriter.Format.parse(format);
+        if (exportFormat == null) {
+            return ResponseEntity.badRequest().build();
         }
 
-        return ResponseEntity.ok(service.list(userId));
+        return ExportWriter.response(exportFormat, "incidents", objectMapper, EXPORT_COLUMNS,
+                sink -> service.export(userId, sink));
     }
 
     @GetMapping("/{id}")
@@ -1,46 +1,192 @@
 package com.priacc.traffic.controller;
 
+import com.priacc.common.web.ExportWriter;
 import com.priacc.traffic.model.Prediction;
+import com.priacc.traffic.service.PredictionIngestService;
+import com.priacc.traffic.service.PredictionRollupService;
 import com.priacc.traffic.service.PredictionService;
+import com.priacc.traffic.service.PredictionSnapshotService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/predictions")
 public class PredictionController {
 
+    private static final List<ExportWriter.Column<Prediction>> EXPORT_COLUMNS = List.of(
+        new ExportWriter.Column<>("id", Prediction::getId),
+        new ExportWriter.Column<>("latitude", Prediction::getLatitude),
+        new ExportWriter.Column<>("longitude", Prediction::getLongitude),
+        new ExportWriter.Column<>("hour", Prediction::getHour),
+        new ExportWriter.Column<>("predictedSpeed", Prediction::getPredictedSpeed),
+        new ExportWriter.Column<>("timestamp", Prediction::getTimestamp)
+    );
+
     private final PredictionService service;
+    private final PredictionIngestService ingestService;
+    private final PredictionSnapshotService snapshotService;
+    private final PredictionRollupService rollupService;
+    private final ObjectMapper objectMapper;
 
-    public PredictionController(PredictionService service) {
+    public PredictionController(PredictionService service, PredictionIngestService ingestService,
+                                PredictionSnapshotService snapshotService, PredictionRollupService rollupService,
+                                ObjectMapper objectMapper) {
         this.service = service;
+        this.ingestService = ingestService;
+        this.snapshotService = snapshotService;
+        this.rollupService = rollupService;
+        this.objectMapper = objectMapper;
     }
 
-    @PostMapping
-    public ResponseEntity<?> receivePredictions(@RequestBody List<Map<String, Object>> predictionsData) {
-        // Convert Map to Prediction entity
-        List<Prediction> predictions = predictionsData.stream().map(data -> {
-            Prediction p = new Prediction();
-            p.setLatitude(Double.valueOf(data.get("latitude").toString()));
-            p.setLongitude(Double.valueOf(data.get("longitude").toString()));
-            p.setHour(Integer.valueOf(data.get("hour").toString()));
-            p.setPredictedSpeed(Double.valueOf(data.get("predicted_speed").toString()));
-            return p;
-        }).collect(Collectors.toList());
+    /**
+     * Takes a JSON array or NDJSON of {latitude, longitude, hour, predicted_speed} and bulk-loads it
+     * while the body is still arriving.
+     *
+     * With "Prefer: respond-async" the batch is only logged to disk and queued: the answer is
+     * 202 with a batch id to poll at /predictions/batches/{id}, or 503 while the queue is full.
+     */
+    @PostMapping(consumes = {MediaType.APPLICATION_JSON_VALUE, "application/x-ndjson"})
+    public ResponseEntity<?> receivePredictions(
+            InputStream body,
+            @RequestHeader(value = "Prefer", required = false) String prefer) throws IOException {
+        boolean async = prefer != null && prefer.contains("respond-async");
+        try {
+            if (async) {
+                Optional<PredictionIngestService.BatchStatus> batch = ingestService.submit(body);
+                if (batch.isEmpty()) {
+                    return ResponseEntity.status(503)
+                        .header(HttpHeaders.RETRY_AFTER, "5")
+                        .body(Map.of("message", "Prediction ingest queue is full"));
+                }
+                return ResponseEntity.accepted()
+                    .location(URI.create("/api/predictions/batches/" + batch.get().batchId()))
+                    .body(batch.get());
+            }
 
-        service.savePredictions(predictions);
+            long count = service.ingest(body);
+            return ResponseEntity.ok(Map.of(
+                "message", "Predictions received and saved successfully",
+                "count", count
+            ));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        }
+    }
 
-        return ResponseEntity.ok(Map.of(
-            "message", "Predictions received and saved successfully",
-            "count", predictions.size()
-        ));
+    @GetMapping("/batches/{id}")
+    public ResponseEntity<PredictionIngestService.BatchStatus> getBatch(@PathVariable String id) {
+        return ingestService.status(id).map(ResponseEntity::ok).orElse(ResponseEntity.notFound().build());
     }
 
+    /**
+     * All predictions, or with any of the filters, the newest ones inside the bounding box
+     * (minLat/minLon/maxLat/maxLon), for the hour and receive-time window [from, to).
+     */
     @GetMapping
-    public ResponseEntity<List<Prediction>> getPredictions(@RequestHeader(value = "X-Username", required = false) String username) {
-        return ResponseEntity.ok(service.getAllPredictions());
+    public ResponseEntity<?> getPredictions(
+            @RequestHeader(value = "X-Username", required = false) String username,
+            @RequestParam(required = false) Double minLat,
+            @RequestParam(required = false) Double minLon,
+            @RequestParam(required = false) Double maxLat,
+            @RequestParam(required = false) Double maxLon,
+            @RequestParam(required = false) Integer hour,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "" + PredictionService.DEFAULT_QUERY_LIMIT) int limit) {
+        if (minLat == null && minLon == null && maxLat == null && maxLon == null && hour == null && from == null && to == null) {
+            return ResponseEntity.ok(service.getAllPredictions());
+        }
+        try {
+            return ResponseEntity.ok(service.search(minLat, minLon, maxLat, maxLon, hour, from, to, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        }
+    }
+
+    /** The latest predicted speed for the grid cell holding the point, at the hour, from memory. */
+    @GetMapping("/latest")
+    public ResponseEntity<?> getLatest(@RequestParam double lat, @RequestParam double lon, @RequestParam int hour) {
+        try {
+            return snapshotService.lookup(lat, lon, hour)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElse(ResponseEntity.status(404).body(Map.of("message", "No prediction for this location and hour")));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        }
+    }
+
+    /** The latest predicted speed of every grid cell in the bounding box, at the hour, from memory. */
+    @GetMapping("/latest/tile")
+    public ResponseEntity<?> getLatestTile(
+            @RequestParam double minLat,
+            @RequestParam double minLon,
+            @RequestParam double maxLat,
+            @RequestParam double maxLon,
+            @RequestParam int hour) {
+        try {
+            return ResponseEntity.ok(snapshotService.tile(minLat, minLon, maxLat, maxLon, hour));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        }
+    }
+
+    /**
+     * The k grid cells nearest to the point that have a prediction for the hour, nearest first,
+     * optionally within maxDistance metres, from memory.
+     */
+    @GetMapping("/nearest")
+    public ResponseEntity<?> getNearest(
+            @RequestParam double lat,
+            @RequestParam double lon,
+            @RequestParam int hour,
+            @RequestParam(defaultValue = "1") int k,
+            @RequestParam(required = false) Double maxDistance) {
+        try {
+            return ResponseEntity.ok(snapshotService.nearest(lat, lon, hour, k, maxDistance));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        }
+    }
+
+    /**
+     * Hourly rollups (samples, mean, min and max predicted speed) of the grid cell holding the point,
+     * for predictions received in [from, to), by default the last 7 days; optionally one hour of day.
+     */
+    @GetMapping("/history")
+    public ResponseEntity<?> getHistory(
+            @RequestParam double lat,
+            @RequestParam double lon,
+            @RequestParam(required = false) Integer hour,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        LocalDateTime end = to != null ? to : LocalDateTime.now();
+        LocalDateTime start = from != null ? from : end.minusDays(7);
+        if (start.isAfter(end)) {
+            return ResponseEntity.badRequest().body(Map.of("message", "from must not be after to"));
+        }
+        return ResponseEntity.ok(rollupService.history(lat, lon, hour, start, end));
+    }
+
+    /** Every prediction, oldest first, streamed as NDJSON (default) or CSV. */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam(defaultValue = "ndjson") String format) {
+        ExportWriter.Format exportFormat = ExportWriter.Format.parse(format);
+        if (exportFormat == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ExportWriter.response(exportFormat, "predictions", objectMapper, EXPORT_COLUMNS, service::export);
     }
 }
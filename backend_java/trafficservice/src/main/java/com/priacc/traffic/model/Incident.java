@@ -4,7 +4,7 @@ import jakarta.persistence.*;
 import java.time.Instant;
 
 @Entity
-@Table(name = "incidents")
+@Table(name = "incidents", indexes = @Index(name = "idx_incidents_user_id_id", columnList = "user_id, id"))
 public class Incident {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
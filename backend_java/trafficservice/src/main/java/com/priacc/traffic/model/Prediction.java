@@ -6,6 +6,10 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
+/**
+ * The table is partitioned by {@code timestamp}; its indexes (cell, hour, timestamp) and (id) are
+ * created by PredictionPartitionManager, since schema updates do not see indexes of a partitioned table.
+ */
 @Entity
 @Table(name = "predictions")
 @Data
@@ -23,8 +27,14 @@ public class Prediction {
     
     private LocalDateTime timestamp;
 
+    /** {@link PredictionGrid} cell of the location, set on insert. */
+    private Integer cell;
+
     @PrePersist
     protected void onCreate() {
         timestamp = LocalDateTime.now();
+        if (latitude != null && longitude != null) {
+            cell = PredictionGrid.cell(latitude, longitude);
+        }
     }
 }
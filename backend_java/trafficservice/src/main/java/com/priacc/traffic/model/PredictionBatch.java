@@ -0,0 +1,26 @@
+package com.priacc.traffic.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.Instant;
+
+/**
+ * A batch of predictions accepted asynchronously, recorded in the transaction that wrote its rows,
+ * or with failedAt set once it has been moved to the dead-letter log instead.
+ */
+@Entity
+@Table(name = "prediction_batches")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PredictionBatch {
+    @Id
+    private String id;
+
+    private Integer rowCount;
+    private Instant receivedAt;
+    private Instant writtenAt;
+    private Instant failedAt;
+}
@@ -0,0 +1,43 @@
+package com.priacc.traffic.model;
+
+/**
+ * Fixed 0.01° grid over the globe (about 1.1 km north-south), used to index predictions by area.
+ *
+ * Coordinates outside the valid range fall into the edge cells. A cell number is
+ * {@code latIndex * LON_CELLS + lonIndex}, so the cells of one grid row form a
+ * contiguous range and a bounding box is one range per row it spans.
+ */
+public final class PredictionGrid {
+    public static final double CELL_DEGREES = 0.01;
+    public static final int LAT_CELLS = 18000;
+    public static final int LON_CELLS = 36000;
+
+    /** The same formula as {@link #cell}, for SQL over the predictions table. */
+    public static final String CELL_SQL =
+            "greatest(0, least(cast(floor((latitude + 90) / cast(0.01 as float8)) as integer), 17999)) * 36000"
+            + " + greatest(0, least(cast(floor((longitude + 180) / cast(0.01 as float8)) as integer), 35999))";
+
+    private PredictionGrid() {}
+
+    public static int latIndex(double latitude) {
+        return Math.max(0, Math.min((int) Math.floor((latitude + 90) / CELL_DEGREES), LAT_CELLS - 1));
+    }
+
+    public static int lonIndex(double longitude) {
+        return Math.max(0, Math.min((int) Math.floor((longitude + 180) / CELL_DEGREES), LON_CELLS - 1));
+    }
+
+    public static int cell(double latitude, double longitude) {
+        return latIndex(latitude) * LON_CELLS + lonIndex(longitude);
+    }
+
+    /** Latitude of the centre of a cell. */
+    public static double latitudeOf(int cell) {
+        return (cell / LON_CELLS + 0.5) * CELL_DEGREES - 90;
+    }
+
+    /** Longitude of the centre of a cell. */
+    public static double longitudeOf(int cell) {
+        return (cell % LON_CELLS + 0.5) * CELL_DEGREES - 180;
+    }
+}
@@ -0,0 +1,44 @@
+package com.priacc.traffic.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Predicted speeds of one grid cell and hour of day, summarised over the predictions received in
+ * one clock hour ({@code bucket}). Kept after the predictions themselves are dropped.
+ */
+@Entity
+@Table(name = "prediction_rollups", indexes = {
+    @Index(name = "idx_prediction_rollups_cell_bucket", columnList = "cell, bucket")
+})
+@IdClass(PredictionRollup.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PredictionRollup {
+    @Id
+    private LocalDateTime bucket;
+    @Id
+    private Integer cell;
+    @Id
+    private Integer hour;
+
+    private Long samples;
+    private Double meanSpeed;
+    private Double minSpeed;
+    private Double maxSpeed;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private LocalDateTime bucket;
+        private Integer cell;
+        private Integer hour;
+    }
+}
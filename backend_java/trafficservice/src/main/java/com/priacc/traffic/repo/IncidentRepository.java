@@ -1,9 +1,21 @@
 package com.priacc.traffic.repo;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.QueryHints;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import com.priacc.traffic.model.Incident;
 import java.util.List;
+import java.util.stream.Stream;
 
-public interface IncidentRepository extends JpaRepository<Incident, Long> {
+public interface IncidentRepository extends JpaRepository<Incident, Long>, JpaSpecificationExecutor<Incident> {
     List<Incident> findByUserId(Long userId);
+
+    /** Reads through a server-side cursor: call inside a transaction and close the stream. */
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    Stream<Incident> streamByUserIdOrderById(Long userId);
 }
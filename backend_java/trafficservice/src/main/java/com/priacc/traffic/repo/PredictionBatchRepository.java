@@ -0,0 +1,9 @@
+package com.priacc.traffic.repo;
+
+import com.priacc.traffic.model.PredictionBatch;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface PredictionBatchRepository extends JpaRepository<PredictionBatch, String> {
+}
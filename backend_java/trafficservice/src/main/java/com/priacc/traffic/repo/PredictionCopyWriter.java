@@ -0,0 +1,90 @@
+package com.priacc.traffic.repo;
+
+import com.priacc.traffic.model.Prediction;
+import com.priacc.traffic.model.PredictionGrid;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+
+/**
+ * Bulk-loads predictions with the Postgres COPY protocol. Rows are sent in 64 KB chunks of one
+ * COPY statement rather than as an INSERT each, which IDENTITY ids rule out batching for.
+ */
+@Component
+public class PredictionCopyWriter {
+
+    private static final String COPY_SQL =
+            "COPY predictions (latitude, longitude, hour, predicted_speed, timestamp, cell) FROM STDIN WITH (FORMAT csv)";
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public PredictionCopyWriter(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Writes every prediction the iterator yields and returns how many there were. It is a single
+     * statement, so if the iterator or the database fails part way, no rows are kept.
+     */
+    public long copy(Iterator<Prediction> predictions) {
+        Long count = jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            CopyIn copy = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_SQL);
+            try {
+                // Same default as Prediction#onCreate, once for the whole load
+                String received = LocalDateTime.now().toString();
+                StringBuilder chunk = new StringBuilder(CHUNK_SIZE + 256);
+                long rows = 0;
+                while (predictions.hasNext()) {
+                    Prediction p = predictions.next();
+                    chunk.append(field(p.getLatitude())).append(',')
+                            .append(field(p.getLongitude())).append(',')
+                            .append(field(p.getHour())).append(',')
+                            .append(field(p.getPredictedSpeed())).append(',')
+                            .append(p.getTimestamp() != null ? p.getTimestamp().toString() : received).append(',')
+                            .append(field(cell(p))).append('\n');
+                    rows++;
+                    if (chunk.length() >= CHUNK_SIZE) {
+                        write(copy, chunk);
+                    }
+                }
+                write(copy, chunk);
+                copy.endCopy();
+                return rows;
+            } finally {
+                if (copy.isActive()) {
+                    copy.cancelCopy();
+                }
+            }
+        });
+        return count != null ? count : 0;
+    }
+
+    private static Integer cell(Prediction p) {
+        if (p.getCell() != null || p.getLatitude() == null || p.getLongitude() == null) {
+            return p.getCell();
+        }
+        return PredictionGrid.cell(p.getLatitude(), p.getLongitude());
+    }
+
+    /** Numbers need no quoting in CSV; an empty field is NULL. */
+    private static String field(Number value) {
+        return value != null ? value.toString() : "";
+    }
+
+    private static void write(CopyIn copy, StringBuilder chunk) throws SQLException {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        byte[] bytes = chunk.toString().getBytes(StandardCharsets.UTF_8);
+        copy.writeToCopy(bytes, 0, bytes.length);
+        chunk.setLength(0);
+    }
+}
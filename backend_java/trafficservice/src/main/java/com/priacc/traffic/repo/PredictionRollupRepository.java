@@ -0,0 +1,18 @@
+package com.priacc.traffic.repo;
+
+import com.priacc.traffic.model.PredictionRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface PredictionRollupRepository extends JpaRepository<PredictionRollup, PredictionRollup.Key> {
+
+    List<PredictionRollup> findByCellAndBucketGreaterThanEqualAndBucketLessThanOrderByBucketAscHourAsc(
+            Integer cell, LocalDateTime from, LocalDateTime to);
+
+    List<PredictionRollup> findByCellAndHourAndBucketGreaterThanEqualAndBucketLessThanOrderByBucketAsc(
+            Integer cell, Integer hour, LocalDateTime from, LocalDateTime to);
+}
@@ -1,23 +1,74 @@
 package com.priacc.traffic.service;
 
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 import com.priacc.traffic.model.Incident;
 import com.priacc.traffic.repo.IncidentRepository;
 
 @Service
 public class IncidentService {
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int MAX_PAGE_SIZE = 500;
+
     private final IncidentRepository repo;
-    public IncidentService(IncidentRepository repo) { this.repo = repo; }
+    private final EntityManager entityManager;
+
+    public IncidentService(IncidentRepository repo, EntityManager entityManager) {
+        this.repo = repo;
+        this.entityManager = entityManager;
+    }
 
     public Incident create(Incident e) { return repo.save(e); }
-    public List<Incident> list(Long userId) { 
-        if (userId != null) {
-            return repo.findByUserId(userId);
+
+    /**
+     * One page of incidents, newest first. Pages are keyset-based: pass the id of the last incident
+     * of the previous page as cursor, so every page is an index range scan on (user_id, id).
+     */
+    public Window<Incident> list(Long userId, String severity, String status, Long cursor, int limit) {
+        Specification<Incident> spec = (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            if (userId != null) {
+                predicates.add(cb.equal(root.get("userId"), userId));
+            }
+            if (severity != null) {
+                predicates.add(cb.equal(cb.upper(root.get("severity")), severity.toUpperCase()));
+            }
+            if (status != null) {
+                predicates.add(cb.equal(cb.upper(root.get("status")), status.toUpperCase()));
+            }
+            return cb.and(predicates.toArray(Predicate[]::new));
+        };
+        ScrollPosition position = cursor != null ? ScrollPosition.forward(Map.of("id", cursor)) : ScrollPosition.keyset();
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        return repo.findBy(spec, q -> q.sortBy(Sort.by(Sort.Direction.DESC, "id")).limit(pageSize).scroll(position));
+    }
+
+    /**
+     * Hands every incident of the user to the sink in id order, reading through a database cursor and
+     * detaching each row once it's been written so the persistence context stays empty.
+     */
+    @Transactional(readOnly = true)
+    public void export(Long userId, Consumer<Incident> sink) {
+        try (Stream<Incident> rows = repo.streamByUserIdOrderById(userId)) {
+            rows.forEach(row -> {
+                sink.accept(row);
+                entityManager.detach(row);
+            });
         }
-        return repo.findAll(); 
     }
+
     public Optional<Incident> get(Long id) { return repo.findById(id); }
     public Incident update(Incident e) { return repo.save(e); }
     public void delete(Long id) { repo.deleteById(id); }
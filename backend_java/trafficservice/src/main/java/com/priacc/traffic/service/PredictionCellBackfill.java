@@ -0,0 +1,65 @@
+package com.priacc.traffic.service;
+
+import com.priacc.traffic.model.PredictionGrid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Fills in the grid cell of predictions stored before the column existed. Runs once in the
+ * background after startup, a range of ids per statement so no transaction or lock is long-lived.
+ */
+@Component
+public class PredictionCellBackfill {
+
+    private static final Logger log = LoggerFactory.getLogger(PredictionCellBackfill.class);
+    private static final String UPDATE_SQL =
+            "update predictions set cell = " + PredictionGrid.CELL_SQL + " where id between ? and ? and cell is null";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PredictionSnapshotService snapshotService;
+    private final int chunkSize;
+
+    public PredictionCellBackfill(JdbcTemplate jdbcTemplate, PredictionSnapshotService snapshotService,
+                                  @Value("${predictions.cell-backfill.chunk-size:10000}") int chunkSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.snapshotService = snapshotService;
+        this.chunkSize = chunkSize;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        Thread thread = new Thread(this::run, "prediction-cell-backfill");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        try {
+            Map<String, Object> range = jdbcTemplate.queryForMap(
+                    "select min(id) as first, max(id) as last from predictions where cell is null");
+            if (range.get("first") == null) {
+                return;
+            }
+            long first = ((Number) range.get("first")).longValue();
+            long last = ((Number) range.get("last")).longValue();
+            long updated = 0;
+            for (long from = first; from <= last; from += chunkSize) {
+                updated += jdbcTemplate.update(UPDATE_SQL, from, from + chunkSize - 1);
+            }
+            log.info("Backfilled the grid cell of {} predictions", updated);
+            if (updated > 0) {
+                // The startup load skipped these rows
+                snapshotService.reload();
+            }
+        } catch (RuntimeException e) {
+            log.warn("Prediction grid cell backfill stopped, it resumes on the next start: {}", e.getMessage());
+        }
+    }
+}
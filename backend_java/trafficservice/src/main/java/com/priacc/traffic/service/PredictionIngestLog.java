@@ -0,0 +1,217 @@
+package com.priacc.traffic.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of prediction batches that were accepted but may not be in the database yet.
+ *
+ * The log is a directory of numbered segment files. Each record is
+ * [magic][body length][body][crc32 of body], where the body holds the receive time, the batch id,
+ * the row count and the rows ({@link #ROW_BYTES} each: latitude, longitude, hour, predicted speed).
+ * Appends are fsynced before they return. A checkpoint file holds the position up to which batches
+ * have been written to the database; segments before it are deleted.
+ *
+ * Opening the log reads back every record after the checkpoint for replay. A record that is cut
+ * short or fails its CRC (a crash mid-append) ends its segment, which is truncated there. New
+ * appends always go to a fresh segment.
+ */
+final class PredictionIngestLog implements Closeable {
+
+    static final int ROW_BYTES = 3 * Double.BYTES + Integer.BYTES;
+
+    private static final Logger log = LoggerFactory.getLogger(PredictionIngestLog.class);
+    private static final int MAGIC = 0x50524544;
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+    private static final String SEGMENT_SUFFIX = ".wal";
+    private static final String CHECKPOINT = "checkpoint";
+
+    /** A point in the log: the end of a record. */
+    record Position(long segment, long offset) {}
+
+    record Entry(String batchId, Instant receivedAt, int rowCount, ByteBuffer rows, Position end) {}
+
+    private final Path dir;
+    private final long segmentBytes;
+    private long activeSegment;
+    private FileChannel active;
+
+    PredictionIngestLog(Path dir, long segmentBytes) {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+    }
+
+    /** Returns the batches after the checkpoint, oldest first, and opens the log for appends. */
+    synchronized List<Entry> open() throws IOException {
+        Files.createDirectories(dir);
+        Position checkpoint = readCheckpoint();
+        List<Entry> entries = new ArrayList<>();
+        long last = checkpoint.segment();
+        for (long segment : segments()) {
+            last = Math.max(last, segment);
+            if (segment < checkpoint.segment()) {
+                Files.deleteIfExists(segmentPath(segment));
+                continue;
+            }
+            try (FileChannel channel = FileChannel.open(segmentPath(segment), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long start = segment == checkpoint.segment() ? Math.min(checkpoint.offset(), channel.size()) : 0;
+                long end = read(channel, segment, start, entries);
+                if (end < channel.size()) {
+                    log.warn("Truncating {} bytes of incomplete record at the end of prediction log segment {}",
+                            channel.size() - end, segment);
+                    channel.truncate(end);
+                    channel.force(true);
+                }
+            }
+        }
+        roll(last + 1);
+        return entries;
+    }
+
+    /** Opens the log for appends without reading it back, for a log that is never replayed. */
+    synchronized void openForAppend() throws IOException {
+        Files.createDirectories(dir);
+        List<Long> segments = segments();
+        long last = segments.isEmpty() ? 0 : segments.get(segments.size() - 1);
+        // A segment nothing was appended to is taken up again rather than left behind
+        roll(last > 0 && Files.size(segmentPath(last)) == 0 ? last : last + 1);
+    }
+
+    /** Appends a batch and syncs it to disk; returns the position just after it. */
+    synchronized Position append(String batchId, Instant receivedAt, int rowCount, ByteBuffer rows) throws IOException {
+        if (active.size() >= segmentBytes) {
+            roll(activeSegment + 1);
+        }
+        byte[] id = batchId.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer prefix = ByteBuffer.allocate(Long.BYTES + Short.BYTES + id.length + Integer.BYTES)
+                .putLong(receivedAt.toEpochMilli())
+                .putShort((short) id.length)
+                .put(id)
+                .putInt(rowCount)
+                .flip();
+        ByteBuffer body = rows.duplicate();
+        CRC32 crc = new CRC32();
+        crc.update(prefix.duplicate());
+        crc.update(body.duplicate());
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                .putInt(MAGIC)
+                .putInt(prefix.remaining() + body.remaining())
+                .flip();
+        ByteBuffer trailer = ByteBuffer.allocate(Integer.BYTES).putInt((int) crc.getValue()).flip();
+
+        ByteBuffer[] record = {header, prefix, body, trailer};
+        try {
+            while (trailer.hasRemaining()) {
+                active.write(record);
+            }
+            active.force(false);
+        } catch (IOException e) {
+            // A partial record ends replay of its segment, so later appends must not follow it
+            roll(activeSegment + 1);
+            throw e;
+        }
+        return new Position(activeSegment, active.size());
+    }
+
+    /** Records that everything up to {@code position} is in the database, and drops finished segments. */
+    synchronized void checkpoint(Position position) throws IOException {
+        Path tmp = dir.resolve(CHECKPOINT + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.allocate(2 * Long.BYTES).putLong(position.segment()).putLong(position.offset()).flip());
+            channel.force(true);
+        }
+        Files.move(tmp, dir.resolve(CHECKPOINT), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        for (long segment : segments()) {
+            boolean drained = segment < position.segment() || (segment == position.segment()
+                    && segment != activeSegment && position.offset() >= Files.size(segmentPath(segment)));
+            if (drained) {
+                Files.deleteIfExists(segmentPath(segment));
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (active != null) {
+            active.close();
+        }
+    }
+
+    private long read(FileChannel channel, long segment, long offset, List<Entry> entries) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (true) {
+            header.clear();
+            if (channel.read(header, offset) < HEADER_BYTES) {
+                return offset;
+            }
+            header.flip();
+            int length = header.getInt(Integer.BYTES);
+            if (header.getInt(0) != MAGIC || length < 0 || length > channel.size() - offset - HEADER_BYTES - Integer.BYTES) {
+                return offset;
+            }
+            ByteBuffer record = ByteBuffer.allocate(length + Integer.BYTES);
+            channel.read(record, offset + HEADER_BYTES);
+            record.flip();
+            CRC32 crc = new CRC32();
+            crc.update(record.slice(0, length));
+            if ((int) crc.getValue() != record.getInt(length)) {
+                return offset;
+            }
+            Instant receivedAt = Instant.ofEpochMilli(record.getLong());
+            byte[] id = new byte[record.getShort()];
+            record.get(id);
+            int rowCount = record.getInt();
+            ByteBuffer rows = record.slice(record.position(), length - record.position());
+            offset += HEADER_BYTES + length + Integer.BYTES;
+            entries.add(new Entry(new String(id, StandardCharsets.UTF_8), receivedAt, rowCount, rows, new Position(segment, offset)));
+        }
+    }
+
+    private void roll(long segment) throws IOException {
+        if (active != null) {
+            active.close();
+        }
+        active = FileChannel.open(segmentPath(segment), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        activeSegment = segment;
+    }
+
+    private Position readCheckpoint() throws IOException {
+        Path file = dir.resolve(CHECKPOINT);
+        if (!Files.exists(file)) {
+            return new Position(0, 0);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        return new Position(buffer.getLong(), buffer.getLong());
+    }
+
+    private List<Long> segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private Path segmentPath(long segment) {
+        return dir.resolve(String.format("%020d%s", segment, SEGMENT_SUFFIX));
+    }
+}
@@ -0,0 +1,382 @@
+package com.priacc.traffic.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.priacc.traffic.model.Prediction;
+import com.priacc.traffic.model.PredictionBatch;
+import com.priacc.traffic.repo.PredictionBatchRepository;
+import com.priacc.traffic.repo.PredictionCopyWriter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Accepts prediction batches without waiting for the database.
+ *
+ * A submitted batch is parsed, appended to a {@link PredictionIngestLog} on local disk and queued;
+ * a single writer thread drains the queue, loading several batches per COPY. Each batch's id is
+ * recorded in prediction_batches in the same transaction as its rows, which is what the status
+ * lookup reads, and what lets batches replayed after a crash be skipped if they had made it.
+ * Once the queue holds max-pending-rows rows, further batches are turned away.
+ *
+ * Writes are retried for as long as the database is unreachable. Any other failure is retried
+ * max-attempts times, then batch by batch, and a batch that still fails is moved to a second log
+ * in the dead-letter directory, so the batches behind it can go in. Its prediction_batches row
+ * then has failedAt set, and its status is FAILED.
+ */
+@Service
+public class PredictionIngestService {
+
+    public enum Status { PENDING, WRITTEN, FAILED }
+
+    public record BatchStatus(String batchId, Status status, int count, Instant receivedAt, Instant writtenAt, Instant failedAt) {}
+
+    private record Pending(String batchId, Instant receivedAt, int rowCount, ByteBuffer rows, PredictionIngestLog.Position end) {}
+
+    private enum Outcome { WRITTEN, FAILED, STOPPED }
+
+    private static final Logger log = LoggerFactory.getLogger(PredictionIngestService.class);
+    private static final Duration MAX_BACKOFF = Duration.ofSeconds(30);
+
+    private final PredictionIngestLog ingestLog;
+    private final PredictionIngestLog deadLetters;
+    private final PredictionCopyWriter copyWriter;
+    private final PredictionBatchRepository batchRepository;
+    private final PredictionSnapshotService snapshotService;
+    private final TransactionTemplate transactionTemplate;
+    private final JsonFactory jsonFactory;
+    private final long maxPendingRows;
+    private final int maxBatchRows;
+    private final int writeBatchRows;
+    private final int maxAttempts;
+    private final Counter deadLettered;
+
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+    private long pendingRows;   // guarded by this
+    private volatile boolean running;
+    private Thread writer;
+
+    public PredictionIngestService(
+            PredictionCopyWriter copyWriter,
+            PredictionBatchRepository batchRepository,
+            PredictionSnapshotService snapshotService,
+            PlatformTransactionManager transactionManager,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${predictions.ingest.log-dir:${user.home}/.urbanops/prediction-log}") Path logDir,
+            @Value("${predictions.ingest.segment-size:64MB}") DataSize segmentSize,
+            @Value("${predictions.ingest.max-pending-rows:1000000}") long maxPendingRows,
+            @Value("${predictions.ingest.max-batch-rows:500000}") int maxBatchRows,
+            @Value("${predictions.ingest.write-batch-rows:50000}") int writeBatchRows,
+            @Value("${predictions.ingest.max-attempts:5}") int maxAttempts) {
+        this.ingestLog = new PredictionIngestLog(logDir, segmentSize.toBytes());
+        this.deadLetters = new PredictionIngestLog(logDir.resolve("dead-letter"), segmentSize.toBytes());
+        this.copyWriter = copyWriter;
+        this.batchRepository = batchRepository;
+        this.snapshotService = snapshotService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.jsonFactory = objectMapper.getFactory();
+        this.maxPendingRows = maxPendingRows;
+        this.maxBatchRows = maxBatchRows;
+        this.writeBatchRows = writeBatchRows;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.deadLettered = meterRegistry.counter("predictions.ingest.dead-lettered");
+    }
+
+    @PostConstruct
+    void start() throws IOException {
+        deadLetters.openForAppend();
+        List<PredictionIngestLog.Entry> replay = ingestLog.open();
+        for (PredictionIngestLog.Entry entry : replay) {
+            enqueue(new Pending(entry.batchId(), entry.receivedAt(), entry.rowCount(), entry.rows(), entry.end()));
+        }
+        if (!replay.isEmpty()) {
+            log.info("Replaying {} prediction batches from the ingest log", replay.size());
+        }
+        running = true;
+        writer = new Thread(this::drain, "prediction-ingest-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    void stop() throws IOException, InterruptedException {
+        // Whatever is still queued stays in the log and is replayed on the next start
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(30));
+        ingestLog.close();
+        deadLetters.close();
+    }
+
+    /**
+     * Parses a JSON array or NDJSON body and durably queues it. Returns the new batch, or empty if
+     * the queue is full. Throws IllegalArgumentException for malformed or oversized input.
+     */
+    public Optional<BatchStatus> submit(InputStream body) throws IOException {
+        synchronized (this) {
+            if (pendingRows >= maxPendingRows) {
+                return Optional.empty();
+            }
+        }
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 * PredictionIngestLog.ROW_BYTES);
+        DataOutputStream rows = new DataOutputStream(buffer);
+        int count = 0;
+        try (PredictionReader reader = new PredictionReader(jsonFactory, body)) {
+            while (reader.hasNext()) {
+                if (count == maxBatchRows) {
+                    throw new IllegalArgumentException("A batch holds at most " + maxBatchRows + " predictions");
+                }
+                Prediction p = reader.next();
+                rows.writeDouble(p.getLatitude());
+                rows.writeDouble(p.getLongitude());
+                rows.writeInt(p.getHour());
+                rows.writeDouble(p.getPredictedSpeed());
+                count++;
+            }
+        }
+
+        Pending batch;
+        synchronized (this) {
+            // A batch larger than the whole budget is still let through into an empty queue
+            if (pendingRows > 0 && pendingRows + count > maxPendingRows) {
+                return Optional.empty();
+            }
+            String batchId = UUID.randomUUID().toString();
+            Instant receivedAt = Instant.now();
+            ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+            PredictionIngestLog.Position end = ingestLog.append(batchId, receivedAt, count, bytes);
+            batch = new Pending(batchId, receivedAt, count, bytes, end);
+            enqueue(batch);
+        }
+        return Optional.of(new BatchStatus(batch.batchId(), Status.PENDING, count, batch.receivedAt(), null, null));
+    }
+
+    public Optional<BatchStatus> status(String batchId) {
+        Pending batch = pending.get(batchId);
+        if (batch != null) {
+            return Optional.of(new BatchStatus(batchId, Status.PENDING, batch.rowCount(), batch.receivedAt(), null, null));
+        }
+        return batchRepository.findById(batchId).map(done -> new BatchStatus(done.getId(),
+                done.getFailedAt() != null ? Status.FAILED : Status.WRITTEN, done.getRowCount(), done.getReceivedAt(),
+                done.getWrittenAt(), done.getFailedAt()));
+    }
+
+    private synchronized void enqueue(Pending batch) {
+        pendingRows += batch.rowCount();
+        pending.put(batch.batchId(), batch);
+        queue.add(batch);
+    }
+
+    private void drain() {
+        while (running) {
+            Pending first;
+            try {
+                first = queue.poll(500, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (first == null) {
+                continue;
+            }
+            List<Pending> group = new ArrayList<>();
+            group.add(first);
+            int rows = first.rowCount();
+            for (Pending next = queue.peek(); next != null && rows + next.rowCount() <= writeBatchRows; next = queue.peek()) {
+                group.add(queue.poll());
+                rows += next.rowCount();
+            }
+            if (!writeWithRetry(group)) {
+                return;
+            }
+            synchronized (this) {
+                pendingRows -= rows;
+            }
+            group.forEach(batch -> pending.remove(batch.batchId()));
+        }
+    }
+
+    /**
+     * Writes the group, or dead-letters the batches in it that can't be written; false only if
+     * shutting down meanwhile.
+     */
+    private boolean writeWithRetry(List<Pending> group) {
+        Outcome outcome = retry(group);
+        if (outcome != Outcome.FAILED) {
+            return outcome == Outcome.WRITTEN;
+        }
+        // Find the batches at fault, in order, so the checkpoint still only moves forward
+        for (Pending batch : group) {
+            outcome = group.size() > 1 ? retry(List.of(batch)) : Outcome.FAILED;
+            if (outcome == Outcome.STOPPED) {
+                return false;
+            }
+            if (outcome == Outcome.FAILED && !deadLetter(batch)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Keeps trying while the database is unreachable, and up to maxAttempts times on other failures. */
+    private Outcome retry(List<Pending> group) {
+        Duration backoff = Duration.ofSeconds(1);
+        int failures = 0;
+        while (true) {
+            try {
+                write(group);
+                ingestLog.checkpoint(group.get(group.size() - 1).end());
+                return Outcome.WRITTEN;
+            } catch (IOException e) {
+                // The rows are in; a stale checkpoint only means a replay that skips them
+                log.warn("Failed to checkpoint the prediction ingest log: {}", e.getMessage());
+                return Outcome.WRITTEN;
+            } catch (RuntimeException e) {
+                if (!unreachable(e) && ++failures >= maxAttempts) {
+                    log.warn("Failed to write {} prediction batches {} times: {}", group.size(), failures, e.getMessage());
+                    return Outcome.FAILED;
+                }
+                log.warn("Failed to write {} prediction batches, retrying in {}s: {}", group.size(), backoff.toSeconds(), e.getMessage());
+            }
+            if (!pause(backoff)) {
+                return Outcome.STOPPED;
+            }
+            backoff = backoff.multipliedBy(2).compareTo(MAX_BACKOFF) > 0 ? MAX_BACKOFF : backoff.multipliedBy(2);
+        }
+    }
+
+    private static boolean unreachable(RuntimeException e) {
+        return e instanceof CannotCreateTransactionException || e instanceof DataAccessResourceFailureException
+                || e instanceof TransientDataAccessException;
+    }
+
+    /** Moves the batch to the dead-letter log and past it in the ingest log; false only if shutting down meanwhile. */
+    private boolean deadLetter(Pending batch) {
+        Duration backoff = Duration.ofSeconds(1);
+        while (true) {
+            try {
+                deadLetters.append(batch.batchId(), batch.receivedAt(), batch.rowCount(), batch.rows());
+                break;
+            } catch (IOException e) {
+                log.warn("Failed to dead-letter prediction batch {}, retrying in {}s: {}", batch.batchId(), backoff.toSeconds(), e.getMessage());
+            }
+            if (!pause(backoff)) {
+                return false;
+            }
+            backoff = backoff.multipliedBy(2).compareTo(MAX_BACKOFF) > 0 ? MAX_BACKOFF : backoff.multipliedBy(2);
+        }
+        log.warn("Moved prediction batch {} ({} rows) to the dead-letter log", batch.batchId(), batch.rowCount());
+        deadLettered.increment();
+        try {
+            batchRepository.save(new PredictionBatch(batch.batchId(), batch.rowCount(), batch.receivedAt(), null, Instant.now()));
+        } catch (RuntimeException e) {
+            // Only the status lookup depends on it, which then no longer knows the batch
+            log.warn("Failed to record prediction batch {} as failed: {}", batch.batchId(), e.getMessage());
+        }
+        try {
+            ingestLog.checkpoint(batch.end());
+        } catch (IOException e) {
+            // Replayed after a restart, it would fail again and be dead-lettered twice at worst
+            log.warn("Failed to checkpoint the prediction ingest log: {}", e.getMessage());
+        }
+        return true;
+    }
+
+    private boolean pause(Duration duration) {
+        long until = System.nanoTime() + duration.toNanos();
+        while (System.nanoTime() < until) {
+            if (!running) {
+                return false;
+            }
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void write(List<Pending> group) {
+        transactionTemplate.executeWithoutResult(tx -> {
+            // Only batches replayed after a crash can already be there, written or dead-lettered
+            Set<String> written = batchRepository.findAllById(group.stream().map(Pending::batchId).toList()).stream()
+                    .map(PredictionBatch::getId)
+                    .collect(Collectors.toSet());
+            List<Pending> fresh = group.stream().filter(batch -> !written.contains(batch.batchId())).toList();
+            PredictionSnapshot.Changes changes = new PredictionSnapshot.Changes();
+            copyWriter.copy(changes.recording(rows(fresh)));
+            snapshotService.applyAfterCommit(changes);
+            Instant writtenAt = Instant.now();
+            batchRepository.saveAll(fresh.stream()
+                    .map(batch -> new PredictionBatch(batch.batchId(), batch.rowCount(), batch.receivedAt(), writtenAt, null))
+                    .toList());
+        });
+    }
+
+    private static Iterator<Prediction> rows(List<Pending> batches) {
+        return new Iterator<>() {
+            private int index;
+            private ByteBuffer rows;
+            private LocalDateTime timestamp;
+
+            @Override
+            public boolean hasNext() {
+                while (rows == null || !rows.hasRemaining()) {
+                    if (index == batches.size()) {
+                        return false;
+                    }
+                    Pending batch = batches.get(index++);
+                    rows = batch.rows().duplicate();
+                    timestamp = LocalDateTime.ofInstant(batch.receivedAt(), ZoneId.systemDefault());
+                }
+                return true;
+            }
+
+            @Override
+            public Prediction next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return new Prediction(null, rows.getDouble(), rows.getDouble(), rows.getInt(), rows.getDouble(), timestamp, null);
+            }
+        };
+    }
+}
@@ -0,0 +1,240 @@
+package com.priacc.traffic.service;
+
+import com.priacc.traffic.model.PredictionGrid;
+
+/**
+ * Static k-d tree over the grid cells that have a prediction for one hour, for nearest-neighbour
+ * lookups. Cell centres are placed on the unit sphere, so straight-line distance between them orders
+ * the same way as great-circle distance, with no special cases at the antimeridian or the poles.
+ *
+ * The tree is implicit in its arrays: a node is a range whose middle entry is the split point, on
+ * the axis along which that range is widest; the halves either side are its subtrees.
+ */
+final class PredictionKdTree {
+
+    static final PredictionKdTree EMPTY = new PredictionKdTree(new int[0], new float[0]);
+    static final double EARTH_RADIUS_METERS = 6_371_008.8;
+
+    /** Receives neighbours nearest first. */
+    interface Visitor {
+        void accept(int cell, float speed, double distanceMeters);
+    }
+
+    private final double[] points;   // x, y, z per entry
+    private final int[] cells;
+    private final float[] speeds;
+    private final byte[] axes;       // split axis of the node whose middle entry this is
+
+    /** Builds the tree over the arrays, which it takes over and reorders. */
+    PredictionKdTree(int[] cells, float[] speeds) {
+        this.cells = cells;
+        this.speeds = speeds;
+        this.points = new double[cells.length * 3];
+        this.axes = new byte[cells.length];
+        for (int i = 0; i < cells.length; i++) {
+            double lat = Math.toRadians(PredictionGrid.latitudeOf(cells[i]));
+            double lon = Math.toRadians(PredictionGrid.longitudeOf(cells[i]));
+            points[i * 3] = Math.cos(lat) * Math.cos(lon);
+            points[i * 3 + 1] = Math.cos(lat) * Math.sin(lon);
+            points[i * 3 + 2] = Math.sin(lat);
+        }
+        build(0, cells.length);
+    }
+
+    int size() {
+        return cells.length;
+    }
+
+    /** Visits up to k cells nearest to the point, no further than maxDistanceMeters away. */
+    void nearest(double latitude, double longitude, int k, double maxDistanceMeters, Visitor visitor) {
+        if (cells.length == 0 || k <= 0) {
+            return;
+        }
+        double lat = Math.toRadians(latitude);
+        double lon = Math.toRadians(longitude);
+        double[] query = {Math.cos(lat) * Math.cos(lon), Math.cos(lat) * Math.sin(lon), Math.sin(lat)};
+        double chord = 2 * Math.sin(Math.min(Math.PI, maxDistanceMeters / EARTH_RADIUS_METERS) / 2);
+        Heap heap = new Heap(Math.min(k, cells.length), chord * chord);
+        search(0, cells.length, query, heap);
+
+        int found = heap.size;
+        int[] order = new int[found];
+        double[] distances = new double[found];
+        for (int i = found - 1; i >= 0; i--) {
+            distances[i] = heap.distances[0];
+            order[i] = heap.poll();
+        }
+        for (int i = 0; i < found; i++) {
+            double angle = 2 * Math.asin(Math.min(1, Math.sqrt(distances[i]) / 2));
+            visitor.accept(cells[order[i]], speeds[order[i]], angle * EARTH_RADIUS_METERS);
+        }
+    }
+
+    private void search(int lo, int hi, double[] query, Heap heap) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        heap.offer(mid, distance2(mid, query));
+        if (hi - lo == 1) {
+            return;
+        }
+        double diff = query[axes[mid]] - points[mid * 3 + axes[mid]];
+        if (diff < 0) {
+            search(lo, mid, query, heap);
+            if (diff * diff <= heap.bound()) {
+                search(mid + 1, hi, query, heap);
+            }
+        } else {
+            search(mid + 1, hi, query, heap);
+            if (diff * diff <= heap.bound()) {
+                search(lo, mid, query, heap);
+            }
+        }
+    }
+
+    private double distance2(int i, double[] query) {
+        double dx = points[i * 3] - query[0];
+        double dy = points[i * 3 + 1] - query[1];
+        double dz = points[i * 3 + 2] - query[2];
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private void build(int lo, int hi) {
+        if (hi - lo <= 1) {
+            return;
+        }
+        int axis = widestAxis(lo, hi);
+        int mid = (lo + hi) >>> 1;
+        select(lo, hi - 1, mid, axis);
+        axes[mid] = (byte) axis;
+        build(lo, mid);
+        build(mid + 1, hi);
+    }
+
+    private int widestAxis(int lo, int hi) {
+        int widest = 0;
+        double widestSpread = -1;
+        for (int axis = 0; axis < 3; axis++) {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = lo; i < hi; i++) {
+                min = Math.min(min, points[i * 3 + axis]);
+                max = Math.max(max, points[i * 3 + axis]);
+            }
+            if (max - min > widestSpread) {
+                widestSpread = max - min;
+                widest = axis;
+            }
+        }
+        return widest;
+    }
+
+    /** Partially sorts [lo, hi] on the axis so entry k is in place, with nothing larger before it. */
+    private void select(int lo, int hi, int k, int axis) {
+        while (lo < hi) {
+            double pivot = points[k * 3 + axis];
+            int i = lo;
+            int j = hi;
+            do {
+                while (points[i * 3 + axis] < pivot) {
+                    i++;
+                }
+                while (pivot < points[j * 3 + axis]) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            } while (i <= j);
+            if (j < k) {
+                lo = i;
+            }
+            if (k < i) {
+                hi = j;
+            }
+        }
+    }
+
+    private void swap(int a, int b) {
+        for (int axis = 0; axis < 3; axis++) {
+            double point = points[a * 3 + axis];
+            points[a * 3 + axis] = points[b * 3 + axis];
+            points[b * 3 + axis] = point;
+        }
+        int cell = cells[a];
+        cells[a] = cells[b];
+        cells[b] = cell;
+        float speed = speeds[a];
+        speeds[a] = speeds[b];
+        speeds[b] = speed;
+    }
+
+    /** Max-heap of the best k entries so far, by squared chord distance. */
+    private static final class Heap {
+        private final int[] entries;
+        private final double[] distances;
+        private final double limit;
+        private int size;
+
+        Heap(int capacity, double limit) {
+            this.entries = new int[capacity];
+            this.distances = new double[capacity];
+            this.limit = limit;
+        }
+
+        /** The distance a candidate has to beat. */
+        double bound() {
+            return size < entries.length ? limit : distances[0];
+        }
+
+        void offer(int entry, double distance) {
+            if (distance > bound()) {
+                return;
+            }
+            if (size < entries.length) {
+                int i = size++;
+                while (i > 0 && distances[(i - 1) / 2] < distance) {
+                    entries[i] = entries[(i - 1) / 2];
+                    distances[i] = distances[(i - 1) / 2];
+                    i = (i - 1) / 2;
+                }
+                entries[i] = entry;
+                distances[i] = distance;
+            } else {
+                siftDown(entry, distance);
+            }
+        }
+
+        /** Removes and returns the furthest entry. */
+        int poll() {
+            int top = entries[0];
+            size--;
+            if (size > 0) {
+                siftDown(entries[size], distances[size]);
+            }
+            return top;
+        }
+
+        private void siftDown(int entry, double distance) {
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && distances[child + 1] > distances[child]) {
+                    child++;
+                }
+                if (distances[child] <= distance) {
+                    break;
+                }
+                entries[i] = entries[child];
+                distances[i] = distances[child];
+                i = child;
+            }
+            entries[i] = entry;
+            distances[i] = distance;
+        }
+    }
+}
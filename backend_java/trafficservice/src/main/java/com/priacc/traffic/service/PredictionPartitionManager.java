@@ -0,0 +1,196 @@
+package com.priacc.traffic.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the predictions table range-partitioned by receive time, one partition per day.
+ *
+ * At startup a plain predictions table (as Hibernate creates it) is converted in one transaction:
+ * it is renamed to predictions_legacy and attached as the partition holding everything up to the
+ * end of the day, under a new partitioned predictions table. Rows without a timestamp, and rows
+ * outside every daily partition (e.g. old batches replayed from the ingest log), go to
+ * predictions_default.
+ *
+ * Maintenance then runs periodically: roll up what's new, create the partitions for the next
+ * days, and drop whole partitions once they're past retention and rolled up, late rows included.
+ */
+@Component
+public class PredictionPartitionManager {
+
+    private static final Logger log = LoggerFactory.getLogger(PredictionPartitionManager.class);
+    private static final DateTimeFormatter BOUND = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final Pattern UPPER_BOUND = Pattern.compile("TO \\('([^']+)'\\)");
+
+    private record Partition(String name, LocalDateTime upperBound) {}
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final PredictionRollupService rollupService;
+    private final Duration retention;
+    private final int daysAhead;
+
+    public PredictionPartitionManager(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                      PredictionRollupService rollupService,
+                                      @Value("${predictions.retention:30d}") Duration retention,
+                                      @Value("${predictions.partitions.days-ahead:3}") int daysAhead) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.rollupService = rollupService;
+        this.retention = retention;
+        this.daysAhead = daysAhead;
+    }
+
+    @PostConstruct
+    void start() {
+        try {
+            String kind = jdbcTemplate.queryForObject(
+                    "select c.relkind::text from pg_class c join pg_namespace n on n.oid = c.relnamespace"
+                    + " where c.relname = 'predictions' and n.nspname = current_schema()", String.class);
+            if ("r".equals(kind)) {
+                transactionTemplate.executeWithoutResult(tx -> partition());
+            }
+            createPartitions();
+        } catch (RuntimeException e) {
+            log.warn("Failed to set up prediction partitions: {}", e.getMessage());
+        }
+        try {
+            rollupService.trackWrites();
+        } catch (RuntimeException e) {
+            // Without it nothing is rolled up, so nothing is dropped either
+            log.warn("Failed to track prediction writes for rollups: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(initialDelayString = "${predictions.partitions.maintenance-interval:1h}",
+               fixedDelayString = "${predictions.partitions.maintenance-interval:1h}")
+    public void maintain() {
+        LocalDateTime rolledUpTo;
+        try {
+            rolledUpTo = rollupService.rollUp();
+        } catch (RuntimeException e) {
+            // Nothing is dropped until it has been rolled up
+            log.warn("Failed to roll up predictions: {}", e.getMessage());
+            rolledUpTo = null;
+        }
+        try {
+            createPartitions();
+            if (rolledUpTo != null) {
+                dropExpired(rolledUpTo);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Prediction partition maintenance failed: {}", e.getMessage());
+        }
+    }
+
+    private void partition() {
+        LocalDateTime legacyEnd = LocalDate.now().plusDays(1).atStartOfDay();
+        jdbcTemplate.execute("lock table predictions in access exclusive mode");
+        Long next = jdbcTemplate.queryForObject("select coalesce(max(id), 0) + 1 from predictions", Long.class);
+        jdbcTemplate.execute("alter table predictions rename to predictions_legacy");
+        jdbcTemplate.execute("alter index if exists idx_predictions_cell_hour_timestamp rename to predictions_legacy_cell_hour_timestamp_idx");
+        // Ids come from a sequence owned by the new parent, so it survives dropping this partition
+        jdbcTemplate.execute("alter table predictions_legacy alter column id drop identity if exists");
+        jdbcTemplate.execute("alter table predictions_legacy alter column id drop default");
+        jdbcTemplate.execute("create table predictions (like predictions_legacy including defaults) partition by range (timestamp)");
+        jdbcTemplate.execute("create sequence if not exists predictions_id_seq");
+        jdbcTemplate.execute("alter sequence predictions_id_seq owned by predictions.id restart with " + next);
+        jdbcTemplate.execute("alter table predictions alter column id set default nextval('predictions_id_seq')");
+        jdbcTemplate.execute("create index idx_predictions_cell_hour_timestamp on predictions (cell, hour, timestamp)");
+        jdbcTemplate.execute("create index predictions_id_idx on predictions (id)");
+        jdbcTemplate.execute("create table predictions_default partition of predictions default");
+        jdbcTemplate.execute("insert into predictions_default select * from predictions_legacy where timestamp is null");
+        jdbcTemplate.execute("delete from predictions_legacy where timestamp is null");
+        jdbcTemplate.execute("alter table predictions attach partition predictions_legacy"
+                + " for values from (minvalue) to ('" + legacyEnd.format(BOUND) + "')");
+        log.info("Partitioned the predictions table by day; existing rows are in predictions_legacy");
+    }
+
+    private void createPartitions() {
+        List<Partition> partitions = partitions();
+        LocalDate day = LocalDate.now();
+        for (Partition partition : partitions) {
+            LocalDate end = partition.upperBound().toLocalDate();
+            if (end.isAfter(day)) {
+                day = end;
+            }
+        }
+        for (LocalDate last = LocalDate.now().plusDays(daysAhead); !day.isAfter(last); day = day.plusDays(1)) {
+            createPartition(day);
+        }
+    }
+
+    /** Creates the day's partition, moving any of its rows that went to the default partition. */
+    private void createPartition(LocalDate day) {
+        String name = "predictions_p" + day.format(SUFFIX);
+        String from = day.atStartOfDay().format(BOUND);
+        String to = day.plusDays(1).atStartOfDay().format(BOUND);
+        transactionTemplate.executeWithoutResult(tx -> {
+            jdbcTemplate.execute("create table " + name + " (like predictions including defaults)");
+            jdbcTemplate.execute("with moved as (delete from predictions_default"
+                    + " where timestamp >= '" + from + "' and timestamp < '" + to + "' returning *)"
+                    + " insert into " + name + " select * from moved");
+            jdbcTemplate.execute("alter table predictions attach partition " + name
+                    + " for values from ('" + from + "') to ('" + to + "')");
+        });
+        log.info("Created prediction partition {}", name);
+    }
+
+    private void dropExpired(LocalDateTime rolledUpTo) {
+        LocalDateTime cutoff = LocalDateTime.now().minus(retention);
+        for (Partition partition : partitions()) {
+            if (!partition.upperBound().isAfter(cutoff) && !partition.upperBound().isAfter(rolledUpTo)) {
+                // Under the lock no row can land in the partition between the check and the drop
+                boolean dropped = Boolean.TRUE.equals(transactionTemplate.execute(tx -> {
+                    jdbcTemplate.execute("lock table predictions in access exclusive mode");
+                    if (rollupService.dirtyBefore(partition.upperBound())) {
+                        return false;
+                    }
+                    jdbcTemplate.execute("drop table " + partition.name());
+                    return true;
+                }));
+                if (dropped) {
+                    log.info("Dropped prediction partition {} (up to {})", partition.name(), partition.upperBound());
+                } else {
+                    log.info("Keeping prediction partition {} until its late rows are rolled up", partition.name());
+                }
+            }
+        }
+        int expired = jdbcTemplate.update("delete from predictions_default where timestamp < ? and timestamp < ?"
+                + " and not exists (select 1 from prediction_rollup_dirty where bucket = date_trunc('hour', timestamp))",
+                cutoff, rolledUpTo);
+        if (expired > 0) {
+            log.info("Deleted {} expired predictions from predictions_default", expired);
+        }
+    }
+
+    /** The range partitions, without the default one. */
+    private List<Partition> partitions() {
+        List<Partition> partitions = new ArrayList<>();
+        jdbcTemplate.query("select c.relname, pg_get_expr(c.relpartbound, c.oid) from pg_inherits i"
+                + " join pg_class c on c.oid = i.inhrelid where i.inhparent = 'predictions'::regclass", rs -> {
+            Matcher bound = UPPER_BOUND.matcher(rs.getString(2));
+            if (bound.find()) {
+                partitions.add(new Partition(rs.getString(1), LocalDateTime.parse(bound.group(1), BOUND)));
+            }
+        });
+        return partitions;
+    }
+}
@@ -0,0 +1,156 @@
+package com.priacc.traffic.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.priacc.traffic.model.Prediction;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads predictions one at a time off a request body, either a JSON array of objects or NDJSON
+ * (one object per line), straight from the parser's tokens. Neither the document nor a map per
+ * row is ever built, so bodies of any size are read in constant memory.
+ *
+ * Malformed input surfaces as IllegalArgumentException naming the offending row.
+ */
+final class PredictionReader implements Iterator<Prediction>, AutoCloseable {
+
+    private final JsonParser parser;
+    private final boolean array;
+    private JsonToken next;
+    private long row;
+
+    PredictionReader(JsonFactory jsonFactory, InputStream body) {
+        try {
+            parser = jsonFactory.createParser(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        JsonToken first = advance();
+        array = first == JsonToken.START_ARRAY;
+        next = array ? advance() : first;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null || (array && next == JsonToken.END_ARRAY)) {
+            return false;
+        }
+        if (next != JsonToken.START_OBJECT) {
+            throw invalid("expected an object but found " + next);
+        }
+        return true;
+    }
+
+    @Override
+    public Prediction next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        row++;
+        Double latitude = null;
+        Double longitude = null;
+        Integer hour = null;
+        Double predictedSpeed = null;
+        while (advance() == JsonToken.FIELD_NAME) {
+            String field = currentName();
+            JsonToken value = advance();
+            switch (field) {
+                case "latitude" -> latitude = doubleValue(value, field);
+                case "longitude" -> longitude = doubleValue(value, field);
+                case "hour" -> hour = intValue(value, field);
+                case "predicted_speed", "predictedSpeed" -> predictedSpeed = doubleValue(value, field);
+                default -> skipValue();
+            }
+        }
+        if (latitude == null || longitude == null || hour == null || predictedSpeed == null) {
+            throw invalid("latitude, longitude, hour and predicted_speed are required");
+        }
+        Prediction prediction = new Prediction();
+        prediction.setLatitude(latitude);
+        prediction.setLongitude(longitude);
+        prediction.setHour(hour);
+        prediction.setPredictedSpeed(predictedSpeed);
+        next = advance();
+        return prediction;
+    }
+
+    @Override
+    public void close() {
+        try {
+            parser.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Double doubleValue(JsonToken token, String field) {
+        try {
+            return switch (token) {
+                case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> parser.getDoubleValue();
+                case VALUE_STRING -> Double.valueOf(parser.getText());
+                default -> throw invalid(field + " must be a number");
+            };
+        } catch (NumberFormatException e) {
+            throw invalid(field + " must be a number");
+        } catch (JsonProcessingException e) {
+            throw invalid(e.getOriginalMessage());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Integer intValue(JsonToken token, String field) {
+        try {
+            return switch (token) {
+                case VALUE_NUMBER_INT -> parser.getIntValue();
+                case VALUE_STRING -> Integer.valueOf(parser.getText());
+                default -> throw invalid(field + " must be an integer");
+            };
+        } catch (NumberFormatException e) {
+            throw invalid(field + " must be an integer");
+        } catch (JsonProcessingException e) {
+            throw invalid(e.getOriginalMessage());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private JsonToken advance() {
+        try {
+            return parser.nextToken();
+        } catch (JsonProcessingException e) {
+            throw invalid(e.getOriginalMessage());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private String currentName() {
+        try {
+            return parser.currentName();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void skipValue() {
+        try {
+            parser.skipChildren();
+        } catch (JsonProcessingException e) {
+            throw invalid(e.getOriginalMessage());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private IllegalArgumentException invalid(String reason) {
+        return new IllegalArgumentException("Invalid prediction " + Math.max(row, 1) + ": " + reason);
+    }
+}
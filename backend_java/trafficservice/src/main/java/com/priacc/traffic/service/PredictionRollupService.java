@@ -0,0 +1,135 @@
+package com.priacc.traffic.service;
+
+import com.priacc.traffic.model.PredictionGrid;
+import com.priacc.traffic.model.PredictionRollup;
+import com.priacc.traffic.repo.PredictionRollupRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+/**
+ * Summarises predictions into per-cell hourly rollups (count, mean, min and max predicted speed),
+ * which outlive the predictions under retention and answer historical queries cheaply.
+ *
+ * A statement trigger on predictions marks the receive hour of every inserted row dirty in
+ * prediction_rollup_dirty, whatever wrote it and however late it was committed (a backlog in
+ * the async ingest queue, or a replay of the ingest log, stamps rows with their receive time).
+ * Each run recomputes the dirty hours before the current one, so it can be repeated safely, and
+ * a partition is only dropped once none of its hours are dirty.
+ */
+@Service
+public class PredictionRollupService {
+
+    private static final Logger log = LoggerFactory.getLogger(PredictionRollupService.class);
+    private static final String ROLLUP_SQL =
+            "insert into prediction_rollups (bucket, cell, hour, samples, mean_speed, min_speed, max_speed)"
+            + " select date_trunc('hour', timestamp), coalesce(cell, " + PredictionGrid.CELL_SQL + "), hour,"
+            + " count(*), avg(predicted_speed), min(predicted_speed), max(predicted_speed)"
+            + " from predictions"
+            + " where timestamp >= ? and timestamp < ? and hour is not null and predicted_speed is not null"
+            + " and latitude is not null and longitude is not null"
+            + " group by 1, 2, 3"
+            + " on conflict (bucket, cell, hour) do update set samples = excluded.samples,"
+            + " mean_speed = excluded.mean_speed, min_speed = excluded.min_speed, max_speed = excluded.max_speed";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final PredictionRollupRepository repository;
+    private final Duration retention;
+
+    public PredictionRollupService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                   PredictionRollupRepository repository,
+                                   @Value("${predictions.rollups.retention:365d}") Duration retention) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.repository = repository;
+        this.retention = retention;
+    }
+
+    /**
+     * Installs the trigger marking written hours dirty, unless it is there already. The first
+     * time, every hour with predictions is marked, since rows written until now may have been
+     * missed. Called once the predictions table is partitioned, so it lands on the parent.
+     */
+    void trackWrites() {
+        Boolean installed = jdbcTemplate.queryForObject(
+                "select exists (select 1 from pg_trigger where tgname = 'predictions_rollup_dirty'"
+                + " and tgrelid = 'predictions'::regclass)", Boolean.class);
+        if (Boolean.TRUE.equals(installed)) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(tx -> {
+            jdbcTemplate.execute("create table if not exists prediction_rollup_dirty (bucket timestamp(6) primary key)");
+            jdbcTemplate.execute("create or replace function predictions_mark_rollup_dirty() returns trigger"
+                    + " language plpgsql as $$ begin"
+                    + " insert into prediction_rollup_dirty select distinct date_trunc('hour', timestamp)"
+                    + " from written where timestamp is not null on conflict do nothing;"
+                    + " return null; end $$");
+            jdbcTemplate.execute("create trigger predictions_rollup_dirty after insert on predictions"
+                    + " referencing new table as written for each statement"
+                    + " execute function predictions_mark_rollup_dirty()");
+            int hours = jdbcTemplate.update("insert into prediction_rollup_dirty"
+                    + " select distinct date_trunc('hour', timestamp) from predictions where timestamp is not null"
+                    + " on conflict do nothing");
+            log.info("Tracking prediction writes for rollups; {} existing hours to roll up", hours);
+        });
+    }
+
+    /** Rolls up every dirty hour before the current one, and returns the time rollups now reach. */
+    public LocalDateTime rollUp() {
+        LocalDateTime until = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS);
+        List<LocalDateTime> dirty = jdbcTemplate.queryForList(
+                "select bucket from prediction_rollup_dirty where bucket < ? order by bucket",
+                LocalDateTime.class, Timestamp.valueOf(until));
+        long rows = 0;
+        // Runs of consecutive hours, at most a day each, so each statement stays short and
+        // touches one or two partitions. An hour written again meanwhile is marked anew
+        for (int i = 0; i < dirty.size(); ) {
+            LocalDateTime start = dirty.get(i++);
+            LocalDateTime end = start.plusHours(1);
+            while (i < dirty.size() && dirty.get(i).equals(end) && end.isBefore(start.plusDays(1))) {
+                end = end.plusHours(1);
+                i++;
+            }
+            Timestamp from = Timestamp.valueOf(start);
+            Timestamp to = Timestamp.valueOf(end);
+            rows += transactionTemplate.execute(tx -> {
+                jdbcTemplate.update("delete from prediction_rollup_dirty where bucket >= ? and bucket < ?", from, to);
+                return jdbcTemplate.update(ROLLUP_SQL, from, to);
+            });
+        }
+        int expired = jdbcTemplate.update("delete from prediction_rollups where bucket < ?",
+                Timestamp.valueOf(LocalDateTime.now().minus(retention)));
+        log.debug("Rolled up {} dirty hours before {} into {} rows, dropped {} expired", dirty.size(), until, rows, expired);
+        return until;
+    }
+
+    /** Whether any hour before the given time has been written since it was last rolled up. */
+    boolean dirtyBefore(LocalDateTime time) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "select exists (select 1 from prediction_rollup_dirty where bucket < ?)",
+                Boolean.class, Timestamp.valueOf(time)));
+    }
+
+    /**
+     * Hourly rollups of the grid cell holding the point, received in [from, to), for one hour of
+     * day or all of them.
+     */
+    public List<PredictionRollup> history(double latitude, double longitude, Integer hour, LocalDateTime from, LocalDateTime to) {
+        int cell = PredictionGrid.cell(latitude, longitude);
+        if (hour != null) {
+            return repository.findByCellAndHourAndBucketGreaterThanEqualAndBucketLessThanOrderByBucketAsc(cell, hour, from, to);
+        }
+        return repository.findByCellAndBucketGreaterThanEqualAndBucketLessThanOrderByBucketAscHourAsc(cell, from, to);
+    }
+}
@@ -1,25 +1,133 @@
 package com.priacc.traffic.service;
 
 import com.priacc.traffic.model.Prediction;
+import com.priacc.traffic.model.PredictionGrid;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.priacc.traffic.repo.PredictionCopyWriter;
 import com.priacc.traffic.repo.PredictionRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 public class PredictionService {
+    public static final int DEFAULT_QUERY_LIMIT = 1000;
+    public static final int MAX_QUERY_LIMIT = 10000;
+    /** Grid rows a bounding box may span (10° of latitude), each one index range scan. */
+    public static final int MAX_BOX_ROWS = 1000;
 
     private final PredictionRepository repository;
+    private final PredictionCopyWriter copyWriter;
+    private final PredictionSnapshotService snapshotService;
+    private final EntityManager entityManager;
+    private final JsonFactory jsonFactory;
 
-    public PredictionService(PredictionRepository repository) {
+    public PredictionService(PredictionRepository repository, PredictionCopyWriter copyWriter,
+                             PredictionSnapshotService snapshotService, EntityManager entityManager,
+                             ObjectMapper objectMapper) {
         this.repository = repository;
+        this.copyWriter = copyWriter;
+        this.snapshotService = snapshotService;
+        this.entityManager = entityManager;
+        this.jsonFactory = objectMapper.getFactory();
     }
 
     public void savePredictions(List<Prediction> predictions) {
-        repository.saveAll(predictions);
+        PredictionSnapshot.Changes changes = new PredictionSnapshot.Changes();
+        copyWriter.copy(changes.recording(predictions.iterator()));
+        snapshotService.applyAfterCommit(changes);
+    }
+
+    /**
+     * Loads the predictions in a JSON array or NDJSON body as it is read, and returns how many
+     * there were. Throws IllegalArgumentException for malformed input, in which case nothing is saved.
+     */
+    public long ingest(InputStream body) {
+        PredictionSnapshot.Changes changes = new PredictionSnapshot.Changes();
+        long count;
+        try (PredictionReader reader = new PredictionReader(jsonFactory, body)) {
+            count = copyWriter.copy(changes.recording(reader));
+        }
+        snapshotService.applyAfterCommit(changes);
+        return count;
     }
 
     public List<Prediction> getAllPredictions() {
         return repository.findAll();
     }
+
+    /**
+     * Newest predictions inside the bounding box (if given), for the hour and receive-time window
+     * (if given). The box is turned into one range of grid cells per row it spans, so the query reads
+     * only those cells off idx_predictions_cell_hour_timestamp however large the table is.
+     * Throws IllegalArgumentException for an inverted or oversized box.
+     */
+    public List<Prediction> search(Double minLat, Double minLon, Double maxLat, Double maxLon,
+                                   Integer hour, LocalDateTime from, LocalDateTime to, int limit) {
+        boolean box = minLat != null || minLon != null || maxLat != null || maxLon != null;
+        if (box) {
+            if (minLat == null || minLon == null || maxLat == null || maxLon == null) {
+                throw new IllegalArgumentException("minLat, minLon, maxLat and maxLon go together");
+            }
+            if (minLat > maxLat || minLon > maxLon) {
+                throw new IllegalArgumentException("The bounding box is inverted");
+            }
+            if (PredictionGrid.latIndex(maxLat) - PredictionGrid.latIndex(minLat) >= MAX_BOX_ROWS) {
+                throw new IllegalArgumentException("The bounding box spans more than " + MAX_BOX_ROWS + " grid rows");
+            }
+        }
+        Specification<Prediction> spec = (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            if (box) {
+                int fromColumn = PredictionGrid.lonIndex(minLon);
+                int toColumn = PredictionGrid.lonIndex(maxLon);
+                List<Predicate> rows = new ArrayList<>();
+                for (int row = PredictionGrid.latIndex(minLat); row <= PredictionGrid.latIndex(maxLat); row++) {
+                    int rowStart = row * PredictionGrid.LON_CELLS;
+                    rows.add(cb.between(root.get("cell"), rowStart + fromColumn, rowStart + toColumn));
+                }
+                predicates.add(cb.or(rows.toArray(Predicate[]::new)));
+                // Cells overhang the box at its edges
+                predicates.add(cb.between(root.get("latitude"), minLat, maxLat));
+                predicates.add(cb.between(root.get("longitude"), minLon, maxLon));
+            }
+            if (hour != null) {
+                predicates.add(cb.equal(root.get("hour"), hour));
+            }
+            if (from != null) {
+                predicates.add(cb.greaterThanOrEqualTo(root.get("timestamp"), from));
+            }
+            if (to != null) {
+                predicates.add(cb.lessThan(root.get("timestamp"), to));
+            }
+            return cb.and(predicates.toArray(Predicate[]::new));
+        };
+        int pageSize = Math.max(1, Math.min(limit, MAX_QUERY_LIMIT));
+        return repository.findBy(spec, q -> q.sortBy(Sort.by(Sort.Direction.DESC, "id")).limit(pageSize).all());
+    }
+
+    /**
+     * Hands every prediction to the sink in id order, reading through a database cursor and
+     * detaching each row once it's been written so the persistence context stays empty.
+     */
+    @Transactional(readOnly = true)
+    public void export(Consumer<Prediction> sink) {
+        try (Stream<Prediction> rows = repository.streamAllByOrderById()) {
+            rows.forEach(row -> {
+                sink.accept(row);
+                entityManager.detach(row);
+            });
+        }
+    }
 }
@@ -0,0 +1,197 @@
+package com.priacc.traffic.service;
+
+import com.priacc.traffic.model.Prediction;
+import com.priacc.traffic.model.PredictionGrid;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.function.IntConsumer;
+
+/**
+ * Immutable latest predicted speed per grid cell and hour, held in two primitive arrays: the cells
+ * that have any prediction, sorted, and their speeds, {@link #HOURS} per cell (NaN where that hour
+ * has none), plus a {@link PredictionKdTree} per hour for nearest-neighbour lookups. Updates
+ * produce a new snapshot, so readers never see a half-applied batch; only the trees of the hours a
+ * batch touches are rebuilt, the rest are shared with the previous snapshot.
+ */
+final class PredictionSnapshot {
+    static final int HOURS = 24;
+    static final PredictionSnapshot EMPTY = new PredictionSnapshot(new int[0], new float[0], emptyTrees());
+
+    // Merge sort keys: (cell * 24 + hour) needs 34 bits, leaving 29 for the arrival order
+    private static final int ORDER_BITS = 29;
+    private static final int MAX_CHANGES = 1 << ORDER_BITS;
+
+    private final int[] cells;
+    private final float[] speeds;
+    private final PredictionKdTree[] trees;
+
+    private PredictionSnapshot(int[] cells, float[] speeds, PredictionKdTree[] trees) {
+        this.cells = cells;
+        this.speeds = speeds;
+        this.trees = trees;
+    }
+
+    int cellCount() {
+        return cells.length;
+    }
+
+    /** The latest speed for the cell and hour, or NaN if there is none. */
+    float speed(int cell, int hour) {
+        int index = Arrays.binarySearch(cells, cell);
+        return index >= 0 ? speeds[index * HOURS + hour] : Float.NaN;
+    }
+
+    /** Calls back with the index of every cell in [fromCell, toCell] that has a speed for the hour. */
+    void forEachInRange(int fromCell, int toCell, int hour, IntConsumer action) {
+        int index = Arrays.binarySearch(cells, fromCell);
+        for (int i = index >= 0 ? index : -index - 1; i < cells.length && cells[i] <= toCell; i++) {
+            if (!Float.isNaN(speeds[i * HOURS + hour])) {
+                action.accept(i);
+            }
+        }
+    }
+
+    int cellAt(int index) {
+        return cells[index];
+    }
+
+    float speedAt(int index, int hour) {
+        return speeds[index * HOURS + hour];
+    }
+
+    PredictionKdTree tree(int hour) {
+        return trees[hour];
+    }
+
+    /** A new snapshot with the changes applied over this one; among changes, later ones win. */
+    PredictionSnapshot with(Changes changes) {
+        if (changes.size == 0) {
+            return this;
+        }
+        long[] keys = new long[changes.size];
+        for (int i = 0; i < changes.size; i++) {
+            keys[i] = ((long) changes.cells[i] * HOURS + changes.hours[i]) << ORDER_BITS | i;
+        }
+        Arrays.sort(keys);
+
+        int distinctCells = 0;
+        int previous = -1;
+        for (long key : keys) {
+            int cell = cellOf(key);
+            if (cell != previous && Arrays.binarySearch(cells, cell) < 0) {
+                distinctCells++;
+            }
+            previous = cell;
+        }
+        int[] mergedCells = new int[cells.length + distinctCells];
+        float[] mergedSpeeds = new float[mergedCells.length * HOURS];
+
+        boolean[] touched = new boolean[HOURS];
+        for (int i = 0; i < changes.size; i++) {
+            touched[changes.hours[i]] = true;
+        }
+
+        int out = 0;
+        int old = 0;
+        int k = 0;
+        while (old < cells.length || k < keys.length) {
+            int nextChanged = k < keys.length ? cellOf(keys[k]) : Integer.MAX_VALUE;
+            int cell = old < cells.length ? Math.min(cells[old], nextChanged) : nextChanged;
+            if (old < cells.length && cells[old] == cell) {
+                System.arraycopy(speeds, old * HOURS, mergedSpeeds, out * HOURS, HOURS);
+                old++;
+            } else {
+                Arrays.fill(mergedSpeeds, out * HOURS, (out + 1) * HOURS, Float.NaN);
+            }
+            while (k < keys.length && cellOf(keys[k]) == cell) {
+                // Sorted by arrival within a key, so the last write for a cell and hour sticks
+                int hour = (int) ((keys[k] >>> ORDER_BITS) % HOURS);
+                mergedSpeeds[out * HOURS + hour] = changes.speeds[(int) (keys[k] & (MAX_CHANGES - 1))];
+                k++;
+            }
+            mergedCells[out++] = cell;
+        }
+        PredictionKdTree[] mergedTrees = trees.clone();
+        for (int hour = 0; hour < HOURS; hour++) {
+            if (touched[hour]) {
+                mergedTrees[hour] = buildTree(mergedCells, mergedSpeeds, hour);
+            }
+        }
+        return new PredictionSnapshot(mergedCells, mergedSpeeds, mergedTrees);
+    }
+
+    private static PredictionKdTree buildTree(int[] cells, float[] speeds, int hour) {
+        int count = 0;
+        for (int i = 0; i < cells.length; i++) {
+            if (!Float.isNaN(speeds[i * HOURS + hour])) {
+                count++;
+            }
+        }
+        int[] treeCells = new int[count];
+        float[] treeSpeeds = new float[count];
+        for (int i = 0, n = 0; i < cells.length; i++) {
+            float speed = speeds[i * HOURS + hour];
+            if (!Float.isNaN(speed)) {
+                treeCells[n] = cells[i];
+                treeSpeeds[n++] = speed;
+            }
+        }
+        return new PredictionKdTree(treeCells, treeSpeeds);
+    }
+
+    private static PredictionKdTree[] emptyTrees() {
+        PredictionKdTree[] trees = new PredictionKdTree[HOURS];
+        Arrays.fill(trees, PredictionKdTree.EMPTY);
+        return trees;
+    }
+
+    private static int cellOf(long key) {
+        return (int) ((key >>> ORDER_BITS) / HOURS);
+    }
+
+    /** Predictions on their way into the database, kept as primitives until they are applied. */
+    static final class Changes {
+        private int[] cells = new int[1024];
+        private byte[] hours = new byte[1024];
+        private float[] speeds = new float[1024];
+        private int size;
+
+        void add(int cell, int hour, float speed) {
+            if (hour < 0 || hour >= HOURS) {
+                return;
+            }
+            if (size == MAX_CHANGES) {
+                throw new IllegalStateException("At most " + MAX_CHANGES + " changes can be applied at once");
+            }
+            if (size == cells.length) {
+                cells = Arrays.copyOf(cells, size * 2);
+                hours = Arrays.copyOf(hours, size * 2);
+                speeds = Arrays.copyOf(speeds, size * 2);
+            }
+            cells[size] = cell;
+            hours[size] = (byte) hour;
+            speeds[size] = speed;
+            size++;
+        }
+
+        /** Passes the rows through, recording each one as it goes by. */
+        Iterator<Prediction> recording(Iterator<Prediction> rows) {
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return rows.hasNext();
+                }
+
+                @Override
+                public Prediction next() {
+                    Prediction p = rows.next();
+                    if (p.getLatitude() != null && p.getLongitude() != null && p.getHour() != null && p.getPredictedSpeed() != null) {
+                        add(PredictionGrid.cell(p.getLatitude(), p.getLongitude()), p.getHour(), p.getPredictedSpeed().floatValue());
+                    }
+                    return p;
+                }
+            };
+        }
+    }
+}
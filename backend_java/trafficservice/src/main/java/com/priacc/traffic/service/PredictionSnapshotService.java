@@ -0,0 +1,184 @@
+package com.priacc.traffic.service;
+
+import com.priacc.traffic.model.PredictionGrid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Serves the latest predicted speed per grid cell and hour from memory.
+ *
+ * The current {@link PredictionSnapshot} is swapped atomically: every loaded batch produces a new
+ * one once its transaction commits, and reads always see one whole snapshot without locking. The
+ * snapshot is loaded from Postgres at startup; until then lookups find nothing.
+ *
+ * Nearest-neighbour lookups use the snapshot's per-hour k-d trees, so they measure from cell centres.
+ */
+@Service
+public class PredictionSnapshotService {
+
+    public record CellSpeed(int cell, double latitude, double longitude, int hour, float predictedSpeed) {}
+
+    public record NearbySpeed(int cell, double latitude, double longitude, int hour, float predictedSpeed,
+                              double distanceMeters) {}
+
+    public static final int MAX_NEAREST = 100;
+
+    private static final Logger log = LoggerFactory.getLogger(PredictionSnapshotService.class);
+    private static final String LATEST_SQL =
+            "select distinct on (cell, hour) cell, hour, predicted_speed from predictions"
+            + " where cell is not null and hour between 0 and 23 and predicted_speed is not null"
+            + " order by cell, hour, timestamp desc, id desc";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final AtomicReference<PredictionSnapshot> current = new AtomicReference<>(PredictionSnapshot.EMPTY);
+    private List<PredictionSnapshot.Changes> duringReload;   // guarded by this
+
+    public PredictionSnapshotService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        try {
+            reload();
+        } catch (RuntimeException e) {
+            log.warn("Failed to load the latest prediction snapshot: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Rebuilds the snapshot from the predictions table. Batches committed while it's being read
+     * are applied again on top, since the read may or may not have seen them.
+     */
+    public void reload() {
+        synchronized (this) {
+            duringReload = new ArrayList<>();
+        }
+        PredictionSnapshot.Changes loaded = new PredictionSnapshot.Changes();
+        try {
+            readOnlyTransaction.executeWithoutResult(tx -> jdbcTemplate.query(con -> {
+                PreparedStatement statement = con.prepareStatement(LATEST_SQL);
+                // Postgres only streams with a fetch size inside a transaction
+                statement.setFetchSize(10000);
+                return statement;
+            }, (RowCallbackHandler) rs -> loaded.add(rs.getInt(1), rs.getInt(2), rs.getFloat(3))));
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                duringReload = null;
+            }
+            throw e;
+        }
+        synchronized (this) {
+            PredictionSnapshot snapshot = PredictionSnapshot.EMPTY.with(loaded);
+            for (PredictionSnapshot.Changes changes : duringReload) {
+                snapshot = snapshot.with(changes);
+            }
+            duringReload = null;
+            current.set(snapshot);
+            log.info("Loaded the latest predictions of {} grid cells", snapshot.cellCount());
+        }
+    }
+
+    /** Applies the changes once the current transaction commits, or right away outside of one. */
+    void applyAfterCommit(PredictionSnapshot.Changes changes) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply(changes);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                apply(changes);
+            }
+        });
+    }
+
+    synchronized void apply(PredictionSnapshot.Changes changes) {
+        if (duringReload != null) {
+            duringReload.add(changes);
+        }
+        current.set(current.get().with(changes));
+    }
+
+    /** The latest prediction for the cell holding the point, at the hour. */
+    public Optional<CellSpeed> lookup(double latitude, double longitude, int hour) {
+        checkHour(hour);
+        int cell = PredictionGrid.cell(latitude, longitude);
+        float speed = current.get().speed(cell, hour);
+        return Float.isNaN(speed) ? Optional.empty() : Optional.of(cellSpeed(cell, hour, speed));
+    }
+
+    /**
+     * The latest prediction of every cell overlapping the bounding box, at the hour. Throws
+     * IllegalArgumentException for a bad hour, or an inverted or oversized box.
+     */
+    public List<CellSpeed> tile(double minLat, double minLon, double maxLat, double maxLon, int hour) {
+        checkHour(hour);
+        if (minLat > maxLat || minLon > maxLon) {
+            throw new IllegalArgumentException("The bounding box is inverted");
+        }
+        int fromRow = PredictionGrid.latIndex(minLat);
+        int toRow = PredictionGrid.latIndex(maxLat);
+        if (toRow - fromRow >= PredictionService.MAX_BOX_ROWS) {
+            throw new IllegalArgumentException("The bounding box spans more than " + PredictionService.MAX_BOX_ROWS + " grid rows");
+        }
+        int fromColumn = PredictionGrid.lonIndex(minLon);
+        int toColumn = PredictionGrid.lonIndex(maxLon);
+        PredictionSnapshot snapshot = current.get();
+        List<CellSpeed> cells = new ArrayList<>();
+        for (int row = fromRow; row <= toRow; row++) {
+            int rowStart = row * PredictionGrid.LON_CELLS;
+            snapshot.forEachInRange(rowStart + fromColumn, rowStart + toColumn, hour,
+                    i -> cells.add(cellSpeed(snapshot.cellAt(i), hour, snapshot.speedAt(i, hour))));
+        }
+        return cells;
+    }
+
+    /**
+     * Up to k cells with a prediction for the hour, nearest first, optionally no further than
+     * maxDistanceMeters. Throws IllegalArgumentException for a bad hour, k or distance.
+     */
+    public List<NearbySpeed> nearest(double latitude, double longitude, int hour, int k, Double maxDistanceMeters) {
+        checkHour(hour);
+        if (k < 1 || k > MAX_NEAREST) {
+            throw new IllegalArgumentException("k must be between 1 and " + MAX_NEAREST);
+        }
+        if (maxDistanceMeters != null && !(maxDistanceMeters > 0)) {
+            throw new IllegalArgumentException("maxDistance must be positive");
+        }
+        List<NearbySpeed> neighbours = new ArrayList<>(k);
+        current.get().tree(hour).nearest(latitude, longitude, k,
+                maxDistanceMeters != null ? maxDistanceMeters : Double.POSITIVE_INFINITY,
+                (cell, speed, distance) -> neighbours.add(new NearbySpeed(cell, PredictionGrid.latitudeOf(cell),
+                        PredictionGrid.longitudeOf(cell), hour, speed, distance)));
+        return neighbours;
+    }
+
+    private static CellSpeed cellSpeed(int cell, int hour, float speed) {
+        return new CellSpeed(cell, PredictionGrid.latitudeOf(cell), PredictionGrid.longitudeOf(cell), hour, speed);
+    }
+
+    private static void checkHour(int hour) {
+        if (hour < 0 || hour >= PredictionSnapshot.HOURS) {
+            throw new IllegalArgumentException("hour must be between 0 and 23");
+        }
+    }
+}
@@ -38,14 +38,15 @@ function getUsername() {
   return null;
 }
 
-// Make authenticated API request
+// Make authenticated API request; onHeaders, if given, receives the headers of a successful response
 async function apiRequest(endpoint, options = {}) {
+  const { onHeaders, ...fetchOptions } = options;
   const token = getAuthToken();
   const username = getUsername();
 
   const headers = {
     'Content-Type': 'application/json',
-    ...options.headers,
+    ...fetchOptions.headers,
   };
 
   if (token) {
@@ -58,7 +59,7 @@ async function apiRequest(endpoint, options = {}) {
 
   try {
     const response = await fetch(`${API_BASE_URL}${endpoint}`, {
-      ...options,
+      ...fetchOptions,
       headers,
     });
 
@@ -94,6 +95,10 @@ async function apiRequest(endpoint, options = {}) {
       throw new Error(errorMessage);
     }
 
+    if (onHeaders) {
+      onHeaders(response.headers);
+    }
+
     // Check if response has content before parsing JSON
     const contentType = response.headers.get('content-type');
     if (contentType && contentType.includes('application/json')) {
@@ -118,6 +123,26 @@ async function apiRequest(endpoint, options = {}) {
   }
 }
 
+// The /list endpoints return one page at a time (newest first); follow X-Next-Cursor to the end
+async function apiRequestAllPages(endpoint) {
+  const records = [];
+  let cursor = null;
+  do {
+    const page = `${endpoint}?limit=500${cursor ? `&cursor=${encodeURIComponent(cursor)}` : ''}`;
+    cursor = null;
+    const data = await apiRequest(page, {
+      onHeaders: (headers) => {
+        cursor = headers.get('X-Next-Cursor');
+      },
+    });
+    if (!Array.isArray(data)) {
+      return records.length > 0 ? records : data;
+    }
+    records.push(...data);
+  } while (cursor);
+  return records;
+}
+
 // Auth API
 export async function login(username, password) {
   try {
@@ -253,7 +278,7 @@ export async function changePassword(oldPassword, newPassword) {
 // Incidents API
 export async function getIncidents() {
   try {
-    const data = await apiRequest('/incidents/list');
+    const data = await apiRequestAllPages('/incidents/list');
     if (!data || !Array.isArray(data)) {
       return [];
     }
@@ -369,7 +394,7 @@ export async function deleteIncident(id) {
 // Sensors API
 export async function getSensors() {
   try {
-    const data = await apiRequest('/sensors/list');
+    const data = await apiRequestAllPages('/sensors/list');
     if (!data || !Array.isArray(data)) {
       return [];
     }
@@ -482,7 +507,7 @@ export async function deleteSensor(id) {
 // Alerts API
 export async function getAlerts() {
   try {
-    const data = await apiRequest('/alerts/list');
+    const data = await apiRequestAllPages('/alerts/list');
     if (!data || !Array.isArray(data)) {
       return [];
     }
@@ -591,7 +616,7 @@ export async function getOnlineSensorsCount() {
 // CCTV Cameras API
 export async function getCCTVCameras() {
   try {
-    const data = await apiRequest('/cameras/list');
+    const data = await apiRequestAllPages('/cameras/list');
     if (!data || !Array.isArray(data)) {
       return [];
     }
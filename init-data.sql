@@ -53,6 +53,12 @@ CREATE TABLE IF NOT EXISTS cameras (
     user_id BIGINT
 );
 
+-- Keyset pagination of the /list endpoints (newest first per user)
+CREATE INDEX IF NOT EXISTS idx_incidents_user_id_id ON incidents (user_id, id);
+CREATE INDEX IF NOT EXISTS idx_alerts_user_id_id ON alerts (user_id, id);
+CREATE INDEX IF NOT EXISTS idx_sensors_user_id_id ON sensors (user_id, id);
+CREATE INDEX IF NOT EXISTS idx_cameras_user_id_id ON cameras (user_id, id);
+
 -- Clean up existing data (optional, safe now that tables exist)
 TRUNCATE TABLE incidents, alerts, sensors, cameras, user_roles, users RESTART IDENTITY CASCADE;
 
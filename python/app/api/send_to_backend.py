@@ -26,9 +26,12 @@ def send_results_to_backend(df):
     try:
         payload = df.to_dict(orient="records")
         logger.info(f"📡 Sending {len(payload)} records to backend: {BACKEND_URL}")
-        res = requests.post(BACKEND_URL, json=payload, timeout=10)
+        # Ask for async ingestion: the backend queues the batch durably and answers 202 right away
+        res = requests.post(BACKEND_URL, json=payload, headers={"Prefer": "respond-async"}, timeout=10)
 
-        if res.status_code == 200:
+        if res.status_code == 202:
+            logger.success(f"✅ Data queued by backend as batch {res.json().get('batchId')}.")
+        elif res.status_code == 200:
             logger.success("✅ Data successfully sent to backend.")
         else:
             logger.warning(f"⚠️ Backend responded with {res.status_code}: {res.text}")